@@ -0,0 +1,81 @@
+/*
+ * Skybot, a multipurpose discord bot
+ *      Copyright (C) 2017 - 2018  Duncan "duncte123" Sterken & Ramid "ramidzkh" Khan & Maurice R S "Sanduhr32"
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ml.duncte123.skybot.command;
+
+import ml.duncte123.skybot.CommandManager;
+import ml.duncte123.skybot.objects.command.Command;
+import ml.duncte123.skybot.objects.command.ParsedInvocation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for looking up and running commands
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandManagerBenchmark {
+
+    private CommandManager manager;
+    private FakeGuildMessageReceivedEvent event;
+    private ParsedInvocation invocation;
+
+    @Setup
+    public void setup() {
+        manager = new CommandManager();
+        DummyCommand cmd = new DummyCommand();
+        manager.addCommand(cmd);
+        event = new FakeGuildMessageReceivedEvent(cmd);
+        invocation = ParsedInvocation.parse(event.getMessage().getContentRaw(), null, null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.getExecutor().shutdown();
+    }
+
+    @Benchmark
+    public Command getCommandByName() {
+        return manager.getCommand("help");
+    }
+
+    @Benchmark
+    public Command getCommandByAlias() {
+        return manager.getCommand("evaluate");
+    }
+
+    @Benchmark
+    public Command getCommandMissing() {
+        return manager.getCommand("thiscommanddoesnotexist");
+    }
+
+    @Benchmark
+    public void runParsedCommand() {
+        manager.runCommand(invocation, event);
+    }
+
+    @Benchmark
+    public void runCommandFromEvent() {
+        manager.runCommand(event);
+    }
+}
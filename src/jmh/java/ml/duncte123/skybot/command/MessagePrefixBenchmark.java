@@ -0,0 +1,99 @@
+/*
+ * Skybot, a multipurpose discord bot
+ *      Copyright (C) 2017 - 2018  Duncan "duncte123" Sterken & Ramid "ramidzkh" Khan & Maurice R S "Sanduhr32"
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ml.duncte123.skybot.command;
+
+import ml.duncte123.skybot.CommandManager;
+import ml.duncte123.skybot.Settings;
+import ml.duncte123.skybot.objects.command.ChannelCommandPolicy;
+import ml.duncte123.skybot.objects.command.ParsedInvocation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the prefix and channel topic checks that the listener does for every message
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessagePrefixBenchmark {
+
+    private static final String SELF_MENTION = "<@210363111729790977>";
+    private static final String TOPIC = "Talk about music here -!music-nsfw-lyrics";
+
+    @Param({"prefixed", "custom", "mention", "plain"})
+    public String kind;
+
+    private String content;
+    private CommandManager manager;
+    private ChannelCommandPolicy policy;
+
+    @Setup
+    public void setup() {
+        switch (kind) {
+            case "prefixed":
+                content = Settings.PREFIX + "play never gonna give you up";
+                break;
+            case "custom":
+                content = "!!play never gonna give you up";
+                break;
+            case "mention":
+                content = SELF_MENTION + " how are you doing";
+                break;
+            default:
+                content = "just a normal message from someone in the chat";
+        }
+
+        manager = new CommandManager();
+        policy = ChannelCommandPolicy.compile(TOPIC);
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.getExecutor().shutdown();
+    }
+
+    @Benchmark
+    public ParsedInvocation parse() {
+        return ParsedInvocation.parse(content, "!!", SELF_MENTION);
+    }
+
+    @Benchmark
+    public boolean parseAndCheckTopic() {
+        ParsedInvocation invocation = ParsedInvocation.parse(content, "!!", SELF_MENTION);
+
+        return invocation != null
+                && policy.isBlocked(invocation.getInvoke(), manager.getCommand(invocation.getInvoke()));
+    }
+
+    @Benchmark
+    public String[] parseWithArgs() {
+        ParsedInvocation invocation = ParsedInvocation.parse(content, "!!", SELF_MENTION);
+
+        return invocation == null ? null : invocation.getArgs();
+    }
+
+    @Benchmark
+    public ChannelCommandPolicy compileTopic() {
+        return ChannelCommandPolicy.compile(TOPIC);
+    }
+}
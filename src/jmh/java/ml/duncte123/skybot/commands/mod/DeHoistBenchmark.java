@@ -0,0 +1,76 @@
+/*
+ * Skybot, a multipurpose discord bot
+ *      Copyright (C) 2017 - 2018  Duncan "duncte123" Sterken & Ramid "ramidzkh" Khan & Maurice R S "Sanduhr32"
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ml.duncte123.skybot.commands.mod;
+
+import ml.duncte123.skybot.objects.FakeInterface;
+import ml.duncte123.skybot.objects.InvocationFunction;
+import net.dv8tion.jda.core.entities.Member;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the name check that runs on every member join and nickname change.
+ * <p>
+ * The fake guild does not give us the nickname permission so the guild settings are never loaded
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeHoistBenchmark {
+
+    @Param({"normal", "hoisted", "dehoisted"})
+    public String kind;
+
+    private DeHoistListener listener;
+    private Member member;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        String name;
+
+        switch (kind) {
+            case "hoisted":
+                name = "!!!! I am at the top";
+                break;
+            case "dehoisted":
+                name = "\uD82F\uDCA2!!!! I am at the top";
+                break;
+            default:
+                name = "Just a normal name";
+        }
+
+        Map<Method, InvocationFunction> handlers = new HashMap<>();
+        handlers.put(Member.class.getMethod("getEffectiveName"), (p, m, a) -> name);
+
+        listener = new DeHoistListener();
+        member = new FakeInterface<>(Member.class, handlers).create();
+    }
+
+    @Benchmark
+    public boolean shouldChangeName() {
+        return listener.shouldChangeName(member);
+    }
+}
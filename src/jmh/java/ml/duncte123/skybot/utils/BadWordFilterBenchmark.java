@@ -0,0 +1,81 @@
+/*
+ * Skybot, a multipurpose discord bot
+ *      Copyright (C) 2017 - 2018  Duncan "duncte123" Sterken & Ramid "ramidzkh" Khan & Maurice R S "Sanduhr32"
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ml.duncte123.skybot.utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the swear filter, the words are loaded from a small csv so no network is needed
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BadWordFilterBenchmark {
+
+    private static final String WORDS = "ass,bass_class_pass_assume_assist\n" +
+            "shit,\n" +
+            "fuck,\n" +
+            "bitch,\n" +
+            "crap,scrap\n" +
+            "damn,\n" +
+            "piss,\n" +
+            "dick,dickens\n" +
+            "bastard,\n" +
+            "wank,\n";
+
+    @Param({"clean", "swear", "leet", "long"})
+    public String kind;
+
+    private BadWordFilter filter;
+    private String message;
+
+    @Setup
+    public void setup() {
+        filter = new BadWordFilter(new StringReader(WORDS));
+
+        switch (kind) {
+            case "clean":
+                message = "Hey everyone, does anyone want to play some music in the voice channel tonight?";
+                break;
+            case "swear":
+                message = "Hey everyone, this bot is a piece of shit sometimes";
+                break;
+            case "leet":
+                message = "Hey everyone, this bot is a piece of 5h!7 sometimes";
+                break;
+            default:
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < 40; i++) {
+                    sb.append("The bass player went to class and had a pass for the meeting. ");
+                }
+                message = sb.toString();
+        }
+    }
+
+    @Benchmark
+    public boolean filterText() {
+        return filter.filterText(message);
+    }
+}
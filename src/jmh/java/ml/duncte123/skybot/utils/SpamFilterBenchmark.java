@@ -0,0 +1,155 @@
+/*
+ * Skybot, a multipurpose discord bot
+ *      Copyright (C) 2017 - 2018  Duncan "duncte123" Sterken & Ramid "ramidzkh" Khan & Maurice R S "Sanduhr32"
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ml.duncte123.skybot.utils;
+
+import kotlin.Triple;
+import ml.duncte123.skybot.objects.FakeInterface;
+import ml.duncte123.skybot.objects.InvocationFunction;
+import net.dv8tion.jda.core.entities.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmarks for the spam filter.
+ * <p>
+ * The spam branch of {@link SpamFilter#check(Triple)} runs with {@link StubActions}, those count the warnings in a map
+ * and put the mutes in a {@link ModerationQueue} of our own that has nothing to send to discord.
+ * The cache of that filter forgets every message right away, so every message goes through the whole branch
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpamFilterBenchmark {
+
+    private SpamFilter spamFilter;
+    private SpamFilter stubbedFilter;
+    private StubActions actions;
+    private Triple<Member, Message, Boolean> normalMessage;
+    private Triple<Member, Message, Boolean> spamTriple;
+    private Message spamMessage;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        long[] rates = {20, 45, 60, 120, 240, 2400};
+        spamFilter = new SpamFilter();
+        spamFilter.applyRates(rates);
+
+        actions = new StubActions();
+        stubbedFilter = new SpamFilter(actions, new SpamCache(0L, 16));
+        stubbedFilter.applyRates(rates);
+
+        Member member = fakeMember(1L, 2L);
+        normalMessage = new Triple<>(member, fakeMessage("Does anyone want to play some music tonight?"), false);
+        spamMessage = fakeMessage("f");
+        spamTriple = new Triple<>(member, spamMessage, false);
+    }
+
+    @TearDown
+    public void tearDown() {
+        actions.queue.shutdown();
+    }
+
+    @Benchmark
+    public boolean checkNormalMessage() {
+        return spamFilter.check(normalMessage);
+    }
+
+    @Benchmark
+    public boolean isSpamNormalMessage() {
+        return spamFilter.isSpam(normalMessage.getSecond());
+    }
+
+    @Benchmark
+    public boolean isSpamSpamMessage() {
+        return spamFilter.isSpam(spamMessage);
+    }
+
+    @Benchmark
+    public boolean checkSpamMessage() {
+        return stubbedFilter.check(spamTriple);
+    }
+
+    private static Member fakeMember(long guildId, long userId) throws NoSuchMethodException {
+        Map<Method, InvocationFunction> guildHandlers = new HashMap<>();
+        guildHandlers.put(Guild.class.getMethod("getIdLong"), (p, m, a) -> guildId);
+        Guild guild = new FakeInterface<>(Guild.class, guildHandlers).create();
+
+        Map<Method, InvocationFunction> userHandlers = new HashMap<>();
+        userHandlers.put(User.class.getMethod("getIdLong"), (p, m, a) -> userId);
+        User user = new FakeInterface<>(User.class, userHandlers).create();
+
+        Map<Method, InvocationFunction> handlers = new HashMap<>();
+        handlers.put(Member.class.getMethod("getGuild"), (p, m, a) -> guild);
+        handlers.put(Member.class.getMethod("getUser"), (p, m, a) -> user);
+
+        return new FakeInterface<>(Member.class, handlers).create();
+    }
+
+    private static Message fakeMessage(String content) throws NoSuchMethodException {
+        Map<Method, InvocationFunction> handlers = new HashMap<>();
+        handlers.put(Message.class.getMethod("getContentDisplay"), (p, m, a) -> content);
+        handlers.put(Message.class.getMethod("getContentRaw"), (p, m, a) -> content);
+
+        Map<Method, InvocationFunction> channelHandlers = new HashMap<>();
+        channelHandlers.put(TextChannel.class.getMethod("getIdLong"), (p, m, a) -> 3L);
+        TextChannel channel = new FakeInterface<>(TextChannel.class, channelHandlers).create();
+        handlers.put(Message.class.getMethod("getTextChannel"), (p, m, a) -> channel);
+
+        return new FakeInterface<>(Message.class, handlers).create();
+    }
+
+    /**
+     * These don't go to the database, the api or discord, the mutes still go through a {@link ModerationQueue}
+     */
+    private static class StubActions implements SpamActions {
+        private final Map<Long, AtomicInteger> warnings = new ConcurrentHashMap<>();
+        private final RecentMessages recentMessages = new RecentMessages();
+        private final ModerationQueue queue = new ModerationQueue();
+
+        @Override
+        public int getWarnings(Member member) {
+            AtomicInteger count = warnings.get(member.getUser().getIdLong());
+            return count == null ? 0 : count.get();
+        }
+
+        @Override
+        public void warn(Member member) {
+            warnings.computeIfAbsent(member.getUser().getIdLong(), k -> new AtomicInteger()).incrementAndGet();
+        }
+
+        @Override
+        public void punish(Member member, TextChannel channel, boolean kick, long minutes) {
+            queue.submit(kick ? ModerationQueue.ActionType.KICK : ModerationQueue.ActionType.MUTE, member, () -> null);
+        }
+
+        @Override
+        public void clearMessages(TextChannel channel, long userId) {
+            queue.delete(channel, recentMessages.getLatestFrom(channel.getIdLong(), userId, 9));
+        }
+    }
+}
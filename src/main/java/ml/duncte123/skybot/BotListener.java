@@ -24,15 +24,19 @@ import ml.duncte123.skybot.audio.GuildMusicManager;
 import ml.duncte123.skybot.commands.essentials.eval.EvalCommand;
 import ml.duncte123.skybot.commands.uncategorized.UserinfoCommand;
 import ml.duncte123.skybot.objects.command.Command;
-import ml.duncte123.skybot.objects.command.CommandCategory;
+import ml.duncte123.skybot.objects.command.ChannelCommandPolicy;
 import ml.duncte123.skybot.objects.command.MusicCommand;
+import ml.duncte123.skybot.objects.command.ParsedInvocation;
 import ml.duncte123.skybot.objects.guild.GuildSettings;
 import ml.duncte123.skybot.utils.*;
 import net.dv8tion.jda.bot.sharding.ShardManager;
 import net.dv8tion.jda.core.Permission;
 import net.dv8tion.jda.core.entities.*;
 import net.dv8tion.jda.core.events.ReadyEvent;
+import net.dv8tion.jda.core.events.ReconnectedEvent;
 import net.dv8tion.jda.core.events.ShutdownEvent;
+import net.dv8tion.jda.core.events.channel.text.TextChannelDeleteEvent;
+import net.dv8tion.jda.core.events.channel.text.update.TextChannelUpdateTopicEvent;
 import net.dv8tion.jda.core.events.guild.GuildJoinEvent;
 import net.dv8tion.jda.core.events.guild.GuildLeaveEvent;
 import net.dv8tion.jda.core.events.guild.member.GenericGuildMemberEvent;
@@ -40,6 +44,8 @@ import net.dv8tion.jda.core.events.guild.member.GuildMemberJoinEvent;
 import net.dv8tion.jda.core.events.guild.member.GuildMemberLeaveEvent;
 import net.dv8tion.jda.core.events.guild.voice.GuildVoiceLeaveEvent;
 import net.dv8tion.jda.core.events.guild.voice.GuildVoiceMoveEvent;
+import net.dv8tion.jda.core.events.message.MessageBulkDeleteEvent;
+import net.dv8tion.jda.core.events.message.guild.GuildMessageDeleteEvent;
 import net.dv8tion.jda.core.events.message.guild.GuildMessageReceivedEvent;
 import net.dv8tion.jda.core.exceptions.ErrorResponseException;
 import net.dv8tion.jda.core.hooks.ListenerAdapter;
@@ -51,6 +57,8 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -70,11 +78,11 @@ public class BotListener extends ListenerAdapter {
      * This filter helps us to fiter out spam
      */
     private final SpamFilter spamFilter = new SpamFilter();
+
     /**
-     * This timer is for checking unbans
+     * This remembers which guilds the invites are for
      */
-    private final ScheduledExecutorService unbanService = Executors.newScheduledThreadPool(1,
-            r -> new Thread(r, "Unban-Thread"));
+    private final InviteCache inviteCache = new InviteCache();
     /**
      * This timer is for checking new quotes
      */
@@ -94,7 +102,7 @@ public class BotListener extends ListenerAdapter {
         }
     };
     /**
-     * This tells us if the {@link #unbanService} is running
+     * This tells us if the {@link ml.duncte123.skybot.utils.UnbanScheduler UnbanScheduler} is running
      */
     private boolean unbanTimerRunning = false;
     /**
@@ -102,13 +110,17 @@ public class BotListener extends ListenerAdapter {
      */
     private boolean settingsUpdateTimerRunning = false;
     /**
-     * Tells us whether {@link #spamUpdateService} clears cache of our {@link #spamFilter}.
+     * Tells us whether {@link #spamUpdateService} clears our caches.
      */
     private boolean isCacheCleanerActive = false;
     /**
      * This is used to check if we should trigger a update for the guild count when we leave a guild
      */
     private final HashMap<String, String> badGuilds = new HashMap<>();
+    /**
+     * This holds the command rules from the channel topics, the key is the id of the channel
+     */
+    private final Map<Long, ChannelCommandPolicy> channelPolicies = new ConcurrentHashMap<>();
 
     @Override
     public void onShutdown(ShutdownEvent event) {
@@ -116,8 +128,9 @@ public class BotListener extends ListenerAdapter {
 
         //Kill other things
         ((EvalCommand) AirUtils.COMMAND_MANAGER.getCommand("eval")).shutdown();
+        AirUtils.COMMAND_MANAGER.getExecutor().shutdown();
         if (unbanTimerRunning)
-            this.unbanService.shutdown();
+            AirUtils.UNBANS.shutdown();
 
         if (settingsUpdateTimerRunning)
             this.settingsUpdateService.shutdown();
@@ -142,6 +155,9 @@ public class BotListener extends ListenerAdapter {
      */
     @Override
     public void onGuildMessageReceived(GuildMessageReceivedEvent event) {
+        //Remember every message, also the ones from bots so the cleanup can remove them
+        AirUtils.RECENT_MESSAGES.add(event.getChannel().getIdLong(), event.getMessageIdLong(), event.getAuthor().getIdLong());
+
         //We only want to respond to members/users
         if (event.getAuthor().isFake() || event.getAuthor().isBot() || event.getMember() == null)
             return;
@@ -158,7 +174,16 @@ public class BotListener extends ListenerAdapter {
             return;
         }
 
-        GuildSettings settings = GuildSettingsUtils.getGuild(event.getGuild());
+        //The settings are almost always in the cache, then this runs right away on this thread
+        GuildSettingsUtils.getGuildAsync(event.getGuild())
+                .thenAccept(settings -> handleMessage(event, settings))
+                .exceptionally(thr -> {
+                    logger.error("Could not handle a message in " + event.getGuild(), thr);
+                    return null;
+                });
+    }
+
+    private void handleMessage(GuildMessageReceivedEvent event, GuildSettings settings) {
         String rw = event.getMessage().getContentRaw();
 
         if (event.getGuild().getSelfMember().hasPermission(Permission.MESSAGE_MANAGE)
@@ -170,23 +195,20 @@ public class BotListener extends ListenerAdapter {
                     //Get the invite Id from the message
                     String inviteID = matcher.group(matcher.groupCount());
 
-                    Invite.resolve(event.getJDA(), inviteID).queue(invite -> {
+                    inviteCache.resolve(event.getJDA(), inviteID, guildId -> {
                         //Check if the invite is for this guild, if it is not delete the message
-                        if (!invite.getGuild().getId().equals(event.getGuild().getId())) {
-                            event.getMessage().delete().reason("Contained Invite").queue(it ->
-                                    MessageUtils.sendMsg(event, event.getAuthor().getAsMention() +
-                                            ", please don't post invite links here", m -> m.delete().queueAfter(3, TimeUnit.SECONDS))
-                            );
+                        if (guildId != InviteCache.UNKNOWN_INVITE && guildId != event.getGuild().getIdLong()) {
+                            AirUtils.MODERATION.delete(event.getChannel(), event.getMessageIdLong());
+                            MessageUtils.sendMsg(event, event.getAuthor().getAsMention() +
+                                    ", please don't post invite links here", m -> m.delete().queueAfter(3, TimeUnit.SECONDS));
                         }
                     });
                 }
             }
 
             if (settings.isEnableSwearFilter()) {
-                Message messageToCheck = event.getMessage();
-                if (wordFilter.filterText(rw)) {
-                    messageToCheck.delete().reason("Blocked for bad swearing: " + messageToCheck.getContentDisplay())
-                            .queue(null, CUSTOM_QUEUE_ERROR);
+                if (wordFilter.filterText(rw, settings)) {
+                    AirUtils.MODERATION.delete(event.getChannel(), event.getMessageIdLong());
 
                     MessageUtils.sendMsg(event,
                             String.format("Hello there, %s please do not use cursive language within this Discord.",
@@ -215,66 +237,58 @@ public class BotListener extends ListenerAdapter {
                     Settings.PREFIX)
             );
             return;
-        } else if (!rw.toLowerCase().startsWith(Settings.PREFIX.toLowerCase()) &&
-                !rw.startsWith(settings.getCustomPrefix())
-                && !rw.startsWith(event.getGuild().getSelfMember().getAsMention())
-                && !rw.toLowerCase().startsWith(Settings.OTHER_PREFIX.toLowerCase())) {
-            return;
         }
 
-        //If the topic contains -commands ignore it
-        if (event.getChannel().getTopic() != null) {
-            String[] blocked = event.getChannel().getTopic().split("-");
-            if (event.getChannel().getTopic().contains("-commands"))
-                return;
-            for (String s : blocked) {
-                if (s.startsWith("!")) {
-                    s = s.split("!")[1];
-                    if (isCategory(s.toUpperCase())) {
-                        if (!shouldBlockCommand(rw, s)) {
-                            return;
-                        }
-                    } else {
-                        if (isaBoolean(settings, rw, s))
-                            return;
-                    }
-                } else {
-                    if (isCategory(s.toUpperCase())) {
-                        if (shouldBlockCommand(rw, s)) {
-                            return;
-                        }
-                    } else {
-                        if (isaBoolean(settings, rw, s))
-                            return;
-                    }
-                }
-            }
+        final ParsedInvocation invocation = ParsedInvocation.parse(rw, settings.getCustomPrefix(),
+                event.getGuild().getSelfMember().getAsMention());
+
+        if (invocation == null) {
+            return;
         }
-        if (rw.startsWith(event.getGuild().getSelfMember().getAsMention())) {
-            final String[] split = rw.replaceFirst(Pattern.quote(Settings.PREFIX), "").split("\\s+");
-            //Handle the chat command
-            Command cmd = AirUtils.COMMAND_MANAGER.getCommand("chat");
-            if (cmd != null)
-                cmd.executeCommand("chat", Arrays.copyOfRange(split, 1, split.length), event);
+
+        //Check the rules that are set in the topic of the channel
+        Command command = AirUtils.COMMAND_MANAGER.getCommand(invocation.getInvoke());
+        if (getChannelPolicy(event.getChannel()).isBlocked(invocation.getInvoke(), command)) {
             return;
         }
-        //Handle the command
-        AirUtils.COMMAND_MANAGER.runCommand(event);
+        //Handle the command, mentions are handled by the chat command
+        AirUtils.COMMAND_MANAGER.dispatchCommand(invocation, event);
     }
 
-    /*
-     * Needs a better name
+    /**
+     * This gets the command rules for a channel, the topic only gets read again when it has changed
+     *
+     * @param channel the channel to get the rules for
+     * @return the {@link ChannelCommandPolicy} for the channel
      */
-    private boolean isaBoolean(GuildSettings settings, String rw, String s) {
-        return s.equalsIgnoreCase(rw.replaceFirst(Settings.OTHER_PREFIX, Pattern.quote(Settings.PREFIX))
-                .replaceFirst(Pattern.quote(settings.getCustomPrefix()), Pattern.quote(Settings.PREFIX))
-                .replaceFirst(Pattern.quote(Settings.PREFIX), "").split("\\s+", 2)[0].toLowerCase());
+    private ChannelCommandPolicy getChannelPolicy(TextChannel channel) {
+        if (channel.getTopic() == null) {
+            return ChannelCommandPolicy.EMPTY;
+        }
+
+        return channelPolicies.computeIfAbsent(channel.getIdLong(), id -> ChannelCommandPolicy.compile(channel.getTopic()));
+    }
+
+    @Override
+    public void onTextChannelUpdateTopic(TextChannelUpdateTopicEvent event) {
+        channelPolicies.remove(event.getChannel().getIdLong());
     }
 
-    private boolean shouldBlockCommand(String rw, String s) {
-        return AirUtils.COMMAND_MANAGER.getCommands(CommandCategory.valueOf(s.toUpperCase()))
-                .contains(AirUtils.COMMAND_MANAGER.getCommand(rw.replaceFirst(Settings.OTHER_PREFIX, Settings.PREFIX)
-                        .replaceFirst(Pattern.quote(Settings.PREFIX), "").split("\\s+", 2)[0].toLowerCase()));
+    @Override
+    public void onTextChannelDelete(TextChannelDeleteEvent event) {
+        channelPolicies.remove(event.getChannel().getIdLong());
+        AirUtils.RECENT_MESSAGES.removeChannel(event.getChannel().getIdLong());
+    }
+
+    @Override
+    public void onGuildMessageDelete(GuildMessageDeleteEvent event) {
+        AirUtils.RECENT_MESSAGES.remove(event.getChannel().getIdLong(), event.getMessageIdLong());
+    }
+
+    @Override
+    public void onMessageBulkDelete(MessageBulkDeleteEvent event) {
+        long channelId = event.getChannel().getIdLong();
+        event.getMessageIds().forEach(id -> AirUtils.RECENT_MESSAGES.remove(channelId, Long.parseLong(id)));
     }
 
     /**
@@ -286,32 +300,54 @@ public class BotListener extends ListenerAdapter {
     public void onReady(ReadyEvent event) {
         logger.info("Logged in as " + String.format("%#s (Shard #%s)", event.getJDA().getSelfUser(), event.getJDA().getShardInfo().getShardId()));
 
+        //The warnings need the token of the bot before they can be sent to the api
+        AirUtils.WARNINGS.setJDA(event.getJDA());
+
         //Start the timers if they have not been started yet
-        if (!unbanTimerRunning && AirUtils.NONE_SQLITE) {
+        //Wait for all the shards, before that the guilds of the other shards look like we left them
+        if (!unbanTimerRunning && AirUtils.NONE_SQLITE && UnbanScheduler.isReady(event.getJDA().asBot().getShardManager())) {
             logger.info("Starting the unban timer.");
-            //Register the timer for the auto unbans
-            unbanService.scheduleAtFixedRate(() ->
-                    ModerationUtils.checkUnbans(event.getJDA().asBot().getShardManager()), 5, 5, TimeUnit.MINUTES);
+            //The bans that expire soon are loaded and the members are unbanned when their ban expires
+            AirUtils.UNBANS.start(event.getJDA().asBot().getShardManager());
             unbanTimerRunning = true;
         }
 
         if (!settingsUpdateTimerRunning && AirUtils.NONE_SQLITE) {
             logger.info("Starting the settings timer.");
-            //This handles the updating from the setting and quotes
-            settingsUpdateService.scheduleWithFixedDelay(GuildSettingsUtils::loadAllSettings, 1, 1, TimeUnit.HOURS);
+            //This gets the settings that changed in the database, the quotes are still loaded every hour
+            settingsUpdateService.scheduleWithFixedDelay(GuildSettingsUtils::syncGuildSettings, 1, 1, TimeUnit.MINUTES);
+            settingsUpdateService.scheduleWithFixedDelay(GuildSettingsUtils::loadFooterQuotesAsync, 1, 1, TimeUnit.HOURS);
             settingsUpdateTimerRunning = true;
         }
 
         if (!isCacheCleanerActive) {
-            logger.info("Starting spam-cache-cleaner!");
-            spamUpdateService.scheduleAtFixedRate(spamFilter::clearMessages, 20, 11, TimeUnit.SECONDS);
+            logger.info("Starting cache-cleaner!");
+            spamUpdateService.scheduleAtFixedRate(AirUtils.COMMAND_MANAGER.getRateLimiter()::cleanup, 1, 1, TimeUnit.MINUTES);
+            spamUpdateService.scheduleAtFixedRate(inviteCache::cleanup, 5, 5, TimeUnit.MINUTES);
+            spamUpdateService.scheduleAtFixedRate(AirUtils.RECENT_MESSAGES::evictIdle, 5, 5, TimeUnit.MINUTES);
             isCacheCleanerActive = true;
         }
 
+        //Load the settings of the guilds on this shard in one go instead of one by one on the first messages
+        if (AirUtils.CONFIG.getBoolean("sql.prewarmSettings", true)) {
+            settingsUpdateService.execute(() -> GuildSettingsUtils.prewarm(event.getJDA()));
+        }
+
         //Update guild count from then the bot was offline (should never die tho)
         GuildUtils.updateGuildCountAndCheck(event.getJDA());
     }
 
+    /**
+     * When the shard reconnected with a new session
+     *
+     * @param event The corresponding {@link ReconnectedEvent}
+     */
+    @Override
+    public void onReconnect(ReconnectedEvent event) {
+        //We missed the messages that were sent while we were gone, so the rings of this shard have gaps in them
+        event.getJDA().getTextChannelCache().forEach(channel -> AirUtils.RECENT_MESSAGES.removeChannel(channel.getIdLong()));
+    }
+
     /**
      * This will fire when a new member joins
      *
@@ -329,13 +365,20 @@ public class BotListener extends ListenerAdapter {
         {{GUILD_OWNER_NAME}} = return the name form the owner
          */
 
-        GuildSettings settings = GuildSettingsUtils.getGuild(event.getGuild());
+        GuildSettingsUtils.getGuildAsync(event.getGuild())
+                .thenAccept(settings -> welcomeMember(event, settings))
+                .exceptionally(thr -> {
+                    logger.error("Could not welcome a member in " + event.getGuild(), thr);
+                    return null;
+                });
+    }
 
+    private void welcomeMember(GuildMemberJoinEvent event, GuildSettings settings) {
         if (settings.isEnableJoinMessage()) {
             String welcomeLeaveChannelId = (settings.getWelcomeLeaveChannel() == null || "".equals(settings.getWelcomeLeaveChannel())
                     ? GuildUtils.getPublicChannel(event.getGuild()).getId() : settings.getWelcomeLeaveChannel());
             TextChannel welcomeLeaveChannel = event.getGuild().getTextChannelById(welcomeLeaveChannelId);
-            String msg = parseGuildVars(settings.getCustomJoinMessage(), event);
+            String msg = parseGuildVars(settings.getCustomJoinMessage(), settings, event);
             if (!msg.isEmpty() || "".equals(msg) || welcomeLeaveChannel != null)
                 MessageUtils.sendMsg(welcomeLeaveChannel, msg);
         }
@@ -353,14 +396,22 @@ public class BotListener extends ListenerAdapter {
     @Override
     public void onGuildMemberLeave(GuildMemberLeaveEvent event) {
         if (event.getMember().equals(event.getGuild().getSelfMember())) return;
-        GuildSettings settings = GuildSettingsUtils.getGuild(event.getGuild());
 
+        GuildSettingsUtils.getGuildAsync(event.getGuild())
+                .thenAccept(settings -> sayGoodbye(event, settings))
+                .exceptionally(thr -> {
+                    logger.error("Could not say goodbye to a member in " + event.getGuild(), thr);
+                    return null;
+                });
+    }
+
+    private void sayGoodbye(GuildMemberLeaveEvent event, GuildSettings settings) {
         if (settings.isEnableJoinMessage()) {
             String welcomeLeaveChannelId =
                     (settings.getWelcomeLeaveChannel() == null || settings.getWelcomeLeaveChannel().isEmpty())
                             ? GuildUtils.getPublicChannel(event.getGuild()).getId() : settings.getWelcomeLeaveChannel();
             TextChannel welcomeLeaveChannel = event.getGuild().getTextChannelById(welcomeLeaveChannelId);
-            String msg = parseGuildVars(settings.getCustomLeaveMessage(), event);
+            String msg = parseGuildVars(settings.getCustomLeaveMessage(), settings, event);
             if (!msg.isEmpty() || "".equals(msg) || welcomeLeaveChannel != null)
                 MessageUtils.sendMsg(welcomeLeaveChannel, msg);
         }
@@ -403,6 +454,11 @@ public class BotListener extends ListenerAdapter {
 
     @Override
     public void onGuildLeave(GuildLeaveEvent event) {
+        event.getGuild().getTextChannelCache().forEach(channel -> {
+            channelPolicies.remove(channel.getIdLong());
+            AirUtils.RECENT_MESSAGES.removeChannel(channel.getIdLong());
+        });
+        wordFilter.removeGuild(event.getGuild().getId());
         if(!badGuilds.containsKey(event.getGuild().getId())) {
             logger.info(TextColor.RED + "Leaving guild: " + event.getGuild().getName() + "." + TextColor.RESET);
             GuildSettingsUtils.deleteGuild(event.getGuild());
@@ -481,12 +537,12 @@ public class BotListener extends ListenerAdapter {
         }
     }
 
-    private String parseGuildVars(String message, GenericGuildMemberEvent event) {
+    private String parseGuildVars(String message, GuildSettings settings, GenericGuildMemberEvent event) {
 
         if (!(event instanceof GuildMemberJoinEvent) && !(event instanceof GuildMemberLeaveEvent))
             return "NOPE";
 
-        String autoRoleId = GuildSettingsUtils.getGuild(event.getGuild()).getAutoroleRole();
+        String autoRoleId = settings.getAutoroleRole();
 
         return message.replaceAll("\\{\\{USER_MENTION}}", event.getUser().getAsMention())
                 .replaceAll("\\{\\{USER_NAME}}", event.getUser().getName())
@@ -501,15 +557,6 @@ public class BotListener extends ListenerAdapter {
                 .replaceAll("\\{\\{EVENT_TYPE}}", event instanceof GuildMemberJoinEvent ? "joined" : "left");
     }
 
-    @SuppressWarnings("ConstantConditions")
-    private boolean isCategory(String name) {
-        try {
-            return CommandCategory.valueOf(name.toUpperCase()) != null;
-        } catch (IllegalArgumentException ignored) {
-            return false;
-        }
-    }
-
     private void killAllShards(ShardManager manager) {
         manager.shutdown();
         /*manager.getShards().forEach(jda -> {
@@ -0,0 +1,259 @@
+/*
+ * Skybot, a multipurpose discord bot
+ *      Copyright (C) 2017 - 2018  Duncan "duncte123" Sterken & Ramid "ramidzkh" Khan & Maurice R S "Sanduhr32"
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ml.duncte123.skybot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This runs the commands on a fixed amount of worker threads so that they don't block the websocket threads from JDA.
+ * <p>
+ * Every guild has its own lane, the tasks in a lane run one after another in the order that they came in.
+ * Different guilds run next to each other.
+ * When a lane or the executor as a whole is full new tasks are rejected
+ */
+public class CommandExecutor {
+
+    /**
+     * The amount of tasks that a lane may run before it has to give the worker to another lane
+     */
+    private static final int LANE_BATCH_SIZE = 8;
+
+    private final Logger logger = LoggerFactory.getLogger(CommandExecutor.class);
+    private final Map<Long, Lane> lanes = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor workers;
+    private final int maxQueueSize;
+    private final int maxGuildQueueSize;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * @param threads           the amount of worker threads
+     * @param maxQueueSize      the max amount of tasks that can wait over all the guilds
+     * @param maxGuildQueueSize the max amount of tasks that can wait in one guild
+     */
+    public CommandExecutor(int threads, int maxQueueSize, int maxGuildQueueSize) {
+        this.maxQueueSize = maxQueueSize;
+        this.maxGuildQueueSize = maxGuildQueueSize;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "Command-Worker-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * This adds a task to the lane of a guild
+     *
+     * @param guildId the id of the guild that the task is for
+     * @param task    the task to run
+     * @return false if the task was rejected because the queue is full
+     */
+    public boolean submit(long guildId, Runnable task) {
+        if (workers.isShutdown()) {
+            rejected.increment();
+            return false;
+        }
+
+        if (queued.incrementAndGet() > maxQueueSize) {
+            queued.decrementAndGet();
+            rejected.increment();
+            return false;
+        }
+
+        final QueuedTask queuedTask = new QueuedTask(task);
+
+        while (true) {
+            Lane lane = lanes.computeIfAbsent(guildId, Lane::new);
+            boolean start;
+
+            synchronized (lane) {
+                //The lane got removed after we got it, get a new one
+                if (lane.retired) {
+                    continue;
+                }
+
+                if (lane.tasks.size() >= maxGuildQueueSize) {
+                    queued.decrementAndGet();
+                    rejected.increment();
+                    return false;
+                }
+
+                lane.tasks.add(queuedTask);
+                start = !lane.running;
+                lane.running = true;
+            }
+
+            if (start) {
+                schedule(lane);
+            }
+
+            return true;
+        }
+    }
+
+    private void schedule(Lane lane) {
+        try {
+            workers.execute(() -> drain(lane));
+        } catch (RejectedExecutionException e) {
+            //We are shutting down, drop what is left in this lane
+            synchronized (lane) {
+                queued.addAndGet(-lane.tasks.size());
+                lane.tasks.clear();
+                lane.running = false;
+                lane.retired = true;
+                lanes.remove(lane.guildId, lane);
+            }
+        }
+    }
+
+    private void drain(Lane lane) {
+        for (int i = 0; i < LANE_BATCH_SIZE; i++) {
+            QueuedTask next;
+
+            synchronized (lane) {
+                next = lane.tasks.poll();
+
+                if (next == null) {
+                    lane.running = false;
+                    lane.retired = true;
+                    lanes.remove(lane.guildId, lane);
+                    return;
+                }
+            }
+
+            queued.decrementAndGet();
+            recordWait(System.nanoTime() - next.queuedAt);
+
+            try {
+                next.task.run();
+            } catch (Throwable thr) {
+                logger.error("Error while running a command task for guild " + lane.guildId, thr);
+            }
+
+            executed.increment();
+        }
+
+        //Let the other guilds have a go before we continue with this one
+        schedule(lane);
+    }
+
+    private void recordWait(long waited) {
+        totalWaitNanos.add(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+    }
+
+    /**
+     * Stops accepting new tasks, the tasks that are running will finish
+     */
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    /**
+     * Returns the amount of tasks that are waiting to run
+     *
+     * @return the amount of tasks that are waiting to run
+     */
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * Returns the amount of guilds that have tasks waiting or running
+     *
+     * @return the amount of guilds that have tasks waiting or running
+     */
+    public int getActiveLanes() {
+        return lanes.size();
+    }
+
+    /**
+     * Returns the amount of tasks that have been ran
+     *
+     * @return the amount of tasks that have been ran
+     */
+    public long getExecutedCount() {
+        return executed.sum();
+    }
+
+    /**
+     * Returns the amount of tasks that were rejected because the queue was full
+     *
+     * @return the amount of tasks that were rejected
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns the average time that a task had to wait before it started in milliseconds
+     *
+     * @return the average wait time in milliseconds
+     */
+    public double getAverageWaitMillis() {
+        long count = executed.sum();
+        return count == 0 ? 0 : totalWaitNanos.sum() / (double) count / 1_000_000D;
+    }
+
+    /**
+     * Returns the longest time that a task had to wait before it started in milliseconds
+     *
+     * @return the longest wait time in milliseconds
+     */
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000D;
+    }
+
+    private static class Lane {
+        private final long guildId;
+        private final Queue<QueuedTask> tasks = new ArrayDeque<>();
+        private boolean running = false;
+        private boolean retired = false;
+
+        private Lane(long guildId) {
+            this.guildId = guildId;
+        }
+    }
+
+    private static class QueuedTask {
+        private final Runnable task;
+        private final long queuedAt = System.nanoTime();
+
+        private QueuedTask(Runnable task) {
+            this.task = task;
+        }
+    }
+}
@@ -19,35 +19,109 @@
 package ml.duncte123.skybot;
 
 import ml.duncte123.skybot.exceptions.VRCubeException;
+import ml.duncte123.skybot.metrics.CommandMetrics;
 import ml.duncte123.skybot.objects.command.Command;
 import ml.duncte123.skybot.objects.command.CommandCategory;
+import ml.duncte123.skybot.objects.command.ParsedInvocation;
 import ml.duncte123.skybot.unstable.utils.ComparatingUtils;
+import ml.duncte123.skybot.utils.AirUtils;
 import ml.duncte123.skybot.utils.GuildSettingsUtils;
+import ml.duncte123.skybot.utils.MessageUtils;
 import net.dv8tion.jda.core.events.message.guild.GuildMessageReceivedEvent;
-import org.reflections.Reflections;
 
-import java.util.Arrays;
-import java.util.List;
-import java.util.Optional;
-import java.util.Set;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 
 public class CommandManager {
 
+    /**
+     * The list of commands that gets generated by the generateCommandIndex task in the build
+     */
+    private static final String COMMAND_INDEX = "/META-INF/skybot/commands.idx";
+
     /**
      * This stores all our commands
      */
     private final Set<Command> commands = ConcurrentHashMap.newKeySet();
 
+    /**
+     * Lower cased names and aliases mapped to their command, this gets replaced as a whole on every change
+     */
+    private volatile Map<String, Command> commandIndex = Collections.emptyMap();
+
+    /**
+     * The commands grouped by their category, this gets replaced as a whole on every change
+     */
+    private volatile Map<CommandCategory, List<Command>> categoryIndex = Collections.emptyMap();
+
+    /**
+     * This runs the commands off the websocket threads, every guild gets its own lane
+     */
+    private final CommandExecutor executor = new CommandExecutor(
+            AirUtils.CONFIG.getInt("commands.workerThreads", Math.max(2, Runtime.getRuntime().availableProcessors())),
+            AirUtils.CONFIG.getInt("commands.maxQueueSize", 1000),
+            AirUtils.CONFIG.getInt("commands.maxGuildQueueSize", 10)
+    );
+
+    /**
+     * This stops users and guilds from using the commands too fast
+     */
+    private final CommandRateLimiter rateLimiter = new CommandRateLimiter(AirUtils.CONFIG);
+
+    /**
+     * This holds when we last told a user that they are going too fast
+     */
+    private final Map<Long, Long> rateLimitReplies = new ConcurrentHashMap<>();
+
+    /**
+     * This keeps track of how often the commands run and how long they take
+     */
+    private final CommandMetrics metrics = new CommandMetrics(executor);
+
+    /**
+     * This holds when we last told a guild that we are too busy, so we don't spam them with it
+     */
+    private final Map<Long, Long> busyReplies = new ConcurrentHashMap<>();
+
     /**
      * This makes sure that all the commands are added
      */
     public CommandManager() {
-        //Get reflections for this project
-        registerCommandsFromReflection(new Reflections("ml.duncte123.skybot.commands"));
-        registerCommandsFromReflection(new Reflections("ml.duncte123.skybot.unstable.commands"));
+        //Load the commands from the list that is made while building
+        registerCommandsFromIndex();
+    }
+
+    /**
+     * Returns the executor that runs the commands
+     *
+     * @return the {@link CommandExecutor} that runs the commands
+     */
+    public CommandExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Returns the rate limiter for the commands
+     *
+     * @return the {@link CommandRateLimiter} for the commands
+     */
+    public CommandRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Returns the metrics of the commands
+     *
+     * @return the {@link CommandMetrics} of the commands
+     */
+    public CommandMetrics getMetrics() {
+        return metrics;
     }
 
     /**
@@ -66,19 +140,21 @@ public class CommandManager {
      * @return a possible null command for the name
      */
     public Command getCommand(String name) {
-        Optional<Command> cmd = commands.stream().filter(c -> c.getName().equals(name)).findFirst();
-
-        if (cmd.isPresent()) {
-            return cmd.get();
+        if (name == null) {
+            return null;
         }
 
-        cmd = commands.stream().filter(c -> Arrays.asList(c.getAliases()).contains(name)).findFirst();
-
-        return cmd.orElse(null);
+        return commandIndex.get(name.toLowerCase());
     }
 
+    /**
+     * This gets all the commands that are in a category
+     *
+     * @param category the category to get the commands for
+     * @return a unmodifiable list of the commands in this category
+     */
     public List<Command> getCommands(CommandCategory category) {
-        return commands.stream().filter(c -> c.getCategory().equals(category)).collect(Collectors.toList());
+        return categoryIndex.getOrDefault(category, Collections.emptyList());
     }
 
     /**
@@ -87,8 +163,16 @@ public class CommandManager {
      * @param command the command to remove
      * @return {@code true} on success
      */
-    public boolean removeCommand(String command) {
-        return commands.remove(getCommand(command));
+    public synchronized boolean removeCommand(String command) {
+        Command cmd = getCommand(command);
+
+        if (cmd == null || !commands.remove(cmd)) {
+            return false;
+        }
+
+        rebuildIndexes();
+
+        return true;
     }
 
     /**
@@ -98,7 +182,7 @@ public class CommandManager {
      * @return true if the command is added
      */
     @SuppressWarnings("UnusedReturnValue")
-    public boolean addCommand(Command command) {
+    public synchronized boolean addCommand(Command command) {
         if (command.getName().contains(" ")) {
             throw new VRCubeException("Name can't have spaces!");
         }
@@ -115,41 +199,177 @@ public class CommandManager {
             return false;
         }
         this.commands.add(command);
+        rebuildIndexes();
 
         return true;
     }
 
     /**
-     * This will run the command when we need them
+     * This will run the command when we need them, this waits for the settings of the guild.
+     * The {@link BotListener} does not use this, it parses the message itself after the settings are loaded
      *
      * @param event the event for the message
      */
     public void runCommand(GuildMessageReceivedEvent event) {
-        final String[] split = event.getMessage().getContentRaw().replaceFirst(
-                "(?i)" + Pattern.quote(Settings.PREFIX) + "|" + Pattern.quote(Settings.OTHER_PREFIX) + "|" +
-                        Pattern.quote(GuildSettingsUtils.getGuild(event.getGuild()).getCustomPrefix()),
-                "").split("\\s+");
-        final String invoke = split[0].toLowerCase();
-
-        Command cmd = getCommand(invoke);
-
-        if (cmd != null) {
-            try {
-                cmd.executeCommand(invoke, Arrays.copyOfRange(split, 1, split.length), event);
-            } catch (Throwable ex) {
-                ComparatingUtils.execCheck(ex);
+        final ParsedInvocation invocation = ParsedInvocation.parse(event.getMessage().getContentRaw(),
+                GuildSettingsUtils.getGuild(event.getGuild()).getCustomPrefix(), null);
+
+        if (invocation != null) {
+            runCommand(invocation, event);
+        }
+    }
+
+    /**
+     * This will run the command for a message that has already been parsed, mentions will run the chat command
+     *
+     * @param invocation the parsed message
+     * @param event      the event for the message
+     */
+    public void runCommand(ParsedInvocation invocation, GuildMessageReceivedEvent event) {
+        final boolean isChat = invocation.getPrefixType() == ParsedInvocation.PrefixType.MENTION;
+        final Command cmd = getCommand(isChat ? "chat" : invocation.getInvoke());
+
+        if (cmd == null) {
+            return;
+        }
+
+        final long start = System.nanoTime();
+        boolean failed = false;
+
+        try {
+            if (isChat) {
+                cmd.executeCommand("chat", invocation.getArgs(), event);
+            } else {
+                cmd.executeCommand(invocation, event);
+            }
+        } catch (Throwable ex) {
+            failed = true;
+            ComparatingUtils.execCheck(ex);
+        } finally {
+            metrics.record(cmd.getName(), System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * This queues the command in the lane of the guild so it runs on one of the command workers.
+     * Commands that don't exist or that are used too fast never get queued
+     *
+     * @param invocation the parsed message
+     * @param event      the event for the message
+     */
+    public void dispatchCommand(ParsedInvocation invocation, GuildMessageReceivedEvent event) {
+        final boolean isChat = invocation.getPrefixType() == ParsedInvocation.PrefixType.MENTION;
+        final Command cmd = getCommand(isChat ? "chat" : invocation.getInvoke());
+
+        if (cmd == null) {
+            return;
+        }
+
+        final long userId = event.getAuthor().getIdLong();
+        final long guildId = event.getGuild().getIdLong();
+
+        if (!rateLimiter.tryAcquire(userId, guildId, cmd.getCategory())) {
+            metrics.recordRateLimited(cmd.getName());
+
+            if (shouldReply(rateLimitReplies, userId)) {
+                MessageUtils.sendMsgAndDeleteAfter(event, 5, TimeUnit.SECONDS,
+                        event.getAuthor().getAsMention() + ", you are using commands too fast, please slow down a bit.");
+            }
+
+            return;
+        }
+
+        if (executor.submit(guildId, () -> runCommand(invocation, event))) {
+            return;
+        }
+
+        //The command never ran so it should not count towards the limits
+        rateLimiter.release(userId, guildId, cmd.getCategory());
+
+        if (shouldReply(busyReplies, guildId)) {
+            MessageUtils.sendMsgAndDeleteAfter(event, 5, TimeUnit.SECONDS,
+                    "I'm a bit busy at the moment, please try that again in a few seconds.");
+        }
+    }
+
+    /**
+     * This checks if we have not replied to the key in the last 10 seconds so we don't spam the channel
+     *
+     * @param lastReplies the map that holds when we last replied
+     * @param key         the id of the user or guild
+     * @return true if we can reply
+     */
+    private boolean shouldReply(Map<Long, Long> lastReplies, long key) {
+        final long now = System.currentTimeMillis();
+        final Long lastReply = lastReplies.get(key);
+
+        if (lastReply != null && now - lastReply <= TimeUnit.SECONDS.toMillis(10)) {
+            return false;
+        }
+
+        lastReplies.put(key, now);
+        //Forget about the old replies so the map does not keep growing
+        lastReplies.values().removeIf(time -> now - time > TimeUnit.MINUTES.toMillis(1));
+
+        return true;
+    }
+
+    /**
+     * This builds the name/alias and category indexes from the current commands and swaps them in at once
+     */
+    private void rebuildIndexes() {
+        Map<String, Command> index = new HashMap<>();
+        Map<CommandCategory, List<Command>> categories = new EnumMap<>(CommandCategory.class);
+
+        //Aliases go in first so that a name always wins over an alias
+        for (Command cmd : commands) {
+            for (String alias : cmd.getAliases()) {
+                index.putIfAbsent(alias.toLowerCase(), cmd);
             }
         }
+
+        for (Command cmd : commands) {
+            index.put(cmd.getName().toLowerCase(), cmd);
+            categories.computeIfAbsent(cmd.getCategory(), c -> new ArrayList<>()).add(cmd);
+        }
+
+        categories.replaceAll((c, list) -> Collections.unmodifiableList(list));
+
+        this.commandIndex = Collections.unmodifiableMap(index);
+        this.categoryIndex = Collections.unmodifiableMap(categories);
     }
 
-    private void registerCommandsFromReflection(Reflections reflections) {
-        //Loop over them commands
-        for (Class<? extends Command> cmd : reflections.getSubTypesOf(Command.class)) {
-            try {
-                //Add the command
-                this.addCommand(cmd.getDeclaredConstructor().newInstance());
-            } catch (Exception ignored) {
+    /**
+     * This creates all the commands that are listed in the {@link #COMMAND_INDEX command index}
+     *
+     * @throws IllegalStateException when the index is missing or when a command can't be created
+     */
+    private void registerCommandsFromIndex() {
+        try (InputStream in = CommandManager.class.getResourceAsStream(COMMAND_INDEX)) {
+            if (in == null) {
+                throw new IllegalStateException("Could not find " + COMMAND_INDEX + ", build the bot with gradle to generate it");
+            }
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+
+                if (!line.isEmpty()) {
+                    this.addCommand(createCommand(line));
+                }
             }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read " + COMMAND_INDEX, e);
+        }
+    }
+
+    private Command createCommand(String className) {
+        try {
+            return Class.forName(className).asSubclass(Command.class).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException | ExceptionInInitializerError e) {
+            throw new IllegalStateException("Could not create command " + className, e);
         }
     }
 }
@@ -0,0 +1,246 @@
+/*
+ * Skybot, a multipurpose discord bot
+ *      Copyright (C) 2017 - 2018  Duncan "duncte123" Sterken & Ramid "ramidzkh" Khan & Maurice R S "Sanduhr32"
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ml.duncte123.skybot;
+
+import ml.duncte123.skybot.config.Config;
+import ml.duncte123.skybot.objects.command.CommandCategory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A token bucket rate limiter for the commands, every user and every guild gets a bucket per {@link CommandCategory}.
+ * <p>
+ * The buckets are stored as the time at which they are full again (GCRA), so a bucket is a single {@link AtomicLong}
+ * that gets updated with a compare and set. The buckets live in a map per category, there is no lock that is shared
+ * between users or guilds
+ */
+public class CommandRateLimiter {
+
+    private static final CommandCategory[] CATEGORIES = CommandCategory.values();
+
+    private final Limit[] userLimits = new Limit[CATEGORIES.length];
+    private final Limit[] guildLimits = new Limit[CATEGORIES.length];
+    private final Map<Long, AtomicLong>[] userBuckets = newBucketMaps();
+    private final Map<Long, AtomicLong>[] guildBuckets = newBucketMaps();
+    private final LongAdder[] rejected = new LongAdder[CATEGORIES.length];
+
+    /**
+     * This reads the limits from the config, the keys look like {@code commands.limits.music.userBurst}.
+     * <p>
+     * Users can use 5 commands in a row per category, after that 20 per minute.
+     * Guilds can use 30 commands in a row per category, after that 120 per minute.
+     *
+     * @param config the config to read the limits from
+     */
+    public CommandRateLimiter(Config config) {
+        for (CommandCategory category : CATEGORIES) {
+            String key = "commands.limits." + category.name().toLowerCase() + ".";
+
+            userLimits[category.ordinal()] = new Limit(
+                    config.getInt(key + "userBurst", 5),
+                    config.getInt(key + "userPerMinute", 20));
+            guildLimits[category.ordinal()] = new Limit(
+                    config.getInt(key + "guildBurst", 30),
+                    config.getInt(key + "guildPerMinute", 120));
+            rejected[category.ordinal()] = new LongAdder();
+        }
+    }
+
+    /**
+     * This takes a token from the bucket of the user and from the bucket of the guild
+     *
+     * @param userId   the id of the user that runs the command
+     * @param guildId  the id of the guild that the command runs in
+     * @param category the category of the command
+     * @return true if the command may run, false if the user or guild is going too fast
+     */
+    public boolean tryAcquire(long userId, long guildId, CommandCategory category) {
+        final int i = category.ordinal();
+        final long now = System.nanoTime();
+
+        if (!tryAcquire(userBuckets[i], userId, userLimits[i], now)) {
+            rejected[i].increment();
+            return false;
+        }
+
+        if (!tryAcquire(guildBuckets[i], guildId, guildLimits[i], now)) {
+            //Give the user its token back, the command did not run
+            release(userBuckets[i], userId, userLimits[i]);
+            rejected[i].increment();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * This gives the tokens from {@link #tryAcquire(long, long, CommandCategory)} back, for when the command did not run after all
+     *
+     * @param userId   the id of the user that tried to run the command
+     * @param guildId  the id of the guild that the command would have ran in
+     * @param category the category of the command
+     */
+    public void release(long userId, long guildId, CommandCategory category) {
+        final int i = category.ordinal();
+
+        release(userBuckets[i], userId, userLimits[i]);
+        release(guildBuckets[i], guildId, guildLimits[i]);
+    }
+
+    private boolean tryAcquire(Map<Long, AtomicLong> buckets, long key, Limit limit, long now) {
+        if (limit.isUnlimited()) {
+            return true;
+        }
+
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+
+        while (true) {
+            final long fullAt = bucket.get();
+            final long next = Math.max(fullAt, now) + limit.interval;
+
+            if (next - now > limit.window) {
+                return false;
+            }
+
+            if (bucket.compareAndSet(fullAt, next)) {
+                return true;
+            }
+        }
+    }
+
+    private void release(Map<Long, AtomicLong> buckets, long key, Limit limit) {
+        if (limit.isUnlimited()) {
+            return;
+        }
+
+        AtomicLong bucket = buckets.get(key);
+        if (bucket != null) {
+            bucket.addAndGet(-limit.interval);
+        }
+    }
+
+    /**
+     * This removes the buckets that are full again, a full bucket is the same as no bucket
+     */
+    public void cleanup() {
+        final long now = System.nanoTime();
+
+        for (int i = 0; i < CATEGORIES.length; i++) {
+            userBuckets[i].values().removeIf(bucket -> bucket.get() - now <= 0);
+            guildBuckets[i].values().removeIf(bucket -> bucket.get() - now <= 0);
+        }
+    }
+
+    /**
+     * This changes the limits of a category
+     *
+     * @param category   the category to change the limits for
+     * @param userLimit  the limit for every user
+     * @param guildLimit the limit for every guild
+     */
+    public void setLimits(CommandCategory category, Limit userLimit, Limit guildLimit) {
+        userLimits[category.ordinal()] = userLimit;
+        guildLimits[category.ordinal()] = guildLimit;
+    }
+
+    /**
+     * Returns the amount of commands that were rejected in a category
+     *
+     * @param category the category
+     * @return the amount of commands that were rejected in a category
+     */
+    public long getRejectedCount(CommandCategory category) {
+        return rejected[category.ordinal()].sum();
+    }
+
+    /**
+     * Returns the amount of commands that were rejected in all categories
+     *
+     * @return the amount of commands that were rejected
+     */
+    public long getRejectedCount() {
+        long total = 0;
+        for (LongAdder adder : rejected) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    /**
+     * Returns the amount of buckets that are being tracked
+     *
+     * @return the amount of buckets that are being tracked
+     */
+    public int getBucketCount() {
+        int total = 0;
+        for (int i = 0; i < CATEGORIES.length; i++) {
+            total += userBuckets[i].size() + guildBuckets[i].size();
+        }
+        return total;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<Long, AtomicLong>[] newBucketMaps() {
+        Map<Long, AtomicLong>[] maps = new Map[CATEGORIES.length];
+        for (int i = 0; i < maps.length; i++) {
+            maps[i] = new ConcurrentHashMap<>();
+        }
+        return maps;
+    }
+
+    /**
+     * The size of a bucket and how fast it fills up again
+     */
+    public static class Limit {
+
+        /**
+         * A limit that lets everything through
+         */
+        public static final Limit UNLIMITED = new Limit(0, 0);
+
+        private final long interval;
+        private final long window;
+
+        /**
+         * @param burst     the amount of commands that can be used in a row
+         * @param perMinute the amount of commands that can be used per minute after that
+         *                  if either of these is 0 or less there is no limit
+         */
+        public Limit(int burst, int perMinute) {
+            if (perMinute <= 0 || burst <= 0) {
+                this.interval = 0;
+                this.window = 0;
+            } else {
+                this.interval = TimeUnit.MINUTES.toNanos(1) / perMinute;
+                this.window = this.interval * burst;
+            }
+        }
+
+        private boolean isUnlimited() {
+            return interval == 0;
+        }
+    }
+}
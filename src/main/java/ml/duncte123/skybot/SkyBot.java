@@ -70,7 +70,7 @@ public class SkyBot {
                 System.exit(-2);
             }
             Connection conn = AirUtils.DB.getConnManager().getConnection();
-            if (!AirUtils.DB.isConnected()) {
+            if (conn == null || !AirUtils.DB.isConnected()) {
                 logger.error("Can't connect to database. ABORTING!!!!!");
                 System.exit(-3);
             } else {
@@ -89,8 +89,11 @@ public class SkyBot {
         //Load the settings before loading the bot
         GuildSettingsUtils.loadAllSettings();
 
-        //Load the tags
-        TagUtils.loadAllTags();
+        //Load the warnings so the spam filter does not have to ask the api
+        AirUtils.WARNINGS.start();
+
+        //Load the tags on a database thread while the shards log in
+        TagUtils.loadAllTagsAsync();
 
         //Set the token to a string
         String token = AirUtils.CONFIG.getString("discord.token", "Your Bot Token");
@@ -110,6 +113,9 @@ public class SkyBot {
         }
 
         logger.info(AirUtils.COMMAND_MANAGER.getCommands().size() + " commands loaded.");
+        AirUtils.COMMAND_MANAGER.getMetrics().registerMBean();
+        AirUtils.MODERATION.registerMBean();
+        AirUtils.DB.getExecutor().registerMBean();
         LavalinkManager.ins.start();
         final String finalUrl = url;
         try {
@@ -0,0 +1,127 @@
+/*
+ * Skybot, a multipurpose discord bot
+ *      Copyright (C) 2017 - 2018  Duncan "duncte123" Sterken & Ramid "ramidzkh" Khan & Maurice R S "Sanduhr32"
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ml.duncte123.skybot.commands.essentials;
+
+import ml.duncte123.skybot.Settings;
+import ml.duncte123.skybot.connections.database.DatabaseExecutor;
+import ml.duncte123.skybot.metrics.CommandMetrics;
+import ml.duncte123.skybot.metrics.LatencyHistogram;
+import ml.duncte123.skybot.objects.command.Command;
+import ml.duncte123.skybot.objects.command.CommandCategory;
+import ml.duncte123.skybot.utils.AirUtils;
+import ml.duncte123.skybot.utils.MessageUtils;
+import ml.duncte123.skybot.utils.ModerationQueue;
+import net.dv8tion.jda.core.events.message.guild.GuildMessageReceivedEvent;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class MetricsCommand extends Command {
+
+    private static final int MAX_ROWS = 15;
+
+    public MetricsCommand() {
+        this.category = CommandCategory.UNLISTED;
+    }
+
+    @Override
+    public void executeCommand(@NotNull String invoke, @NotNull String[] args, @NotNull GuildMessageReceivedEvent event) {
+        //noinspection deprecation
+        if (!Arrays.asList(Settings.wbkxwkZPaG4ni5lm8laY).contains(event.getAuthor().getId())) {
+            return;
+        }
+
+        CommandMetrics metrics = AirUtils.COMMAND_MANAGER.getMetrics();
+        ModerationQueue moderation = AirUtils.MODERATION;
+        DatabaseExecutor database = AirUtils.DB.getExecutor();
+
+        if (args.length == 1 && "reset".equals(args[0])) {
+            metrics.reset();
+            MessageUtils.sendSuccess(event.getMessage());
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder("```prolog\n")
+                .append(String.format("Queue: %s waiting in %s guilds, %s rejected, wait avg %.2fms max %.2fms%n",
+                        metrics.getQueueDepth(),
+                        metrics.getActiveLanes(),
+                        metrics.getRejectedCommands(),
+                        metrics.getAverageQueueWaitMillis(),
+                        metrics.getMaxQueueWaitMillis()))
+                .append(String.format("Total: %s runs, %s errors, %s rate limited%n",
+                        metrics.getTotalInvocations(), metrics.getTotalErrors(), metrics.getTotalRateLimited()))
+                .append(String.format("Moderation: %s waiting (%s kicks, %s mutes, %s deletes, %s nicknames), %s running, " +
+                                "%s done, %s failed, %s merged, wait max %.2fms%n",
+                        moderation.getBacklog(),
+                        moderation.getKickBacklog(),
+                        moderation.getMuteBacklog(),
+                        moderation.getDeleteBacklog(),
+                        moderation.getNicknameBacklog(),
+                        moderation.getInFlight(),
+                        moderation.getExecutedCount(),
+                        moderation.getFailedCount(),
+                        moderation.getDedupedCount() + moderation.getCoalescedDeletes(),
+                        moderation.getMaxWaitMillis()))
+                .append(String.format("Database: %s waiting, %s running, %s done, %s failed, %s rejected, %s timed out, " +
+                                "wait avg %.2fms max %.2fms, run avg %.2fms%n%n",
+                        database.getQueueDepth(),
+                        database.getActiveThreads(),
+                        database.getExecutedCount(),
+                        database.getFailedCount(),
+                        database.getRejectedCount(),
+                        database.getTimeoutCount(),
+                        database.getAverageWaitMillis(),
+                        database.getMaxWaitMillis(),
+                        database.getAverageRunMillis()))
+                .append(String.format("%-16s %8s %6s %7s %9s %9s %9s %9s%n", "Command", "Runs", "Errors", "Limited", "p50", "p95", "p99", "Max"));
+
+        List<CommandMetrics.CommandStats> stats = metrics.getAllStats();
+        for (CommandMetrics.CommandStats s : stats.subList(0, Math.min(MAX_ROWS, stats.size()))) {
+            LatencyHistogram latency = s.getLatency();
+            sb.append(String.format("%-16s %8s %6s %7s %7.1fms %7.1fms %7.1fms %7.1fms%n",
+                    s.getName(),
+                    s.getInvocations(),
+                    s.getErrors(),
+                    s.getRateLimited(),
+                    latency.getPercentileMillis(50),
+                    latency.getPercentileMillis(95),
+                    latency.getPercentileMillis(99),
+                    latency.getMaxMillis()));
+        }
+
+        MessageUtils.sendMsg(event, sb.append("```").toString());
+    }
+
+    @Override
+    public String help() {
+        return "Shows how often the commands run and how long they take\n" +
+                "Usage: `" + PREFIX + getName() + " [reset]`";
+    }
+
+    @Override
+    public String getName() {
+        return "metrics";
+    }
+
+    @Override
+    public String[] getAliases() {
+        return new String[]{"commandstats"};
+    }
+}
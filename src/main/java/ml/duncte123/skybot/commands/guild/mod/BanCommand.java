@@ -18,6 +18,7 @@
 
 package ml.duncte123.skybot.commands.guild.mod;
 
+import ml.duncte123.skybot.objects.Ban;
 import ml.duncte123.skybot.objects.command.Command;
 import ml.duncte123.skybot.objects.command.CommandCategory;
 import ml.duncte123.skybot.utils.AirUtils;
@@ -82,11 +83,13 @@ public class BanCommand extends Command {
                 CalculateBanTime calculateBanTime = new CalculateBanTime(event, timeParts).invoke();
                 if (calculateBanTime.is()) return;
                 String finalUnbanDate = calculateBanTime.getFinalUnbanDate();
+                long finalUnbanTime = calculateBanTime.getFinalUnbanTime();
                 int finalBanTime = calculateBanTime.getFinalBanTime();
                 event.getGuild().getController().ban(toBan.getId(), 1, reason).queue(
                         (voidMethod) -> {
                             if (finalBanTime > 0) {
                                 ModerationUtils.addBannedUserToDb(event.getAuthor().getId(), toBan.getName(), toBan.getDiscriminator(), toBan.getId(), finalUnbanDate, event.getGuild().getId());
+                                AirUtils.UNBANS.add(new Ban(0, toBan.getId(), toBan.getName(), toBan.getDiscriminator(), event.getGuild().getId(), finalUnbanTime));
 
                                 ModerationUtils.modLog(event.getAuthor(), toBan, "banned", reason, args[1], event.getGuild());
                             } else {
@@ -123,6 +126,7 @@ public class BanCommand extends Command {
         private GuildMessageReceivedEvent event;
         private String[] timeParts;
         private String finalUnbanDate;
+        private long finalUnbanTime;
         private int finalBanTime;
 
         CalculateBanTime(GuildMessageReceivedEvent event, String... timeParts) {
@@ -138,6 +142,10 @@ public class BanCommand extends Command {
             return finalUnbanDate;
         }
 
+        long getFinalUnbanTime() {
+            return finalUnbanTime;
+        }
+
         int getFinalBanTime() {
             return finalBanTime;
         }
@@ -197,6 +205,7 @@ public class BanCommand extends Command {
                         return this;
                 }
                 unbanDate = df.format(dt);
+                finalUnbanTime = dt.getTime();
             }
 
             finalUnbanDate = unbanDate.isEmpty() ? "" : unbanDate;
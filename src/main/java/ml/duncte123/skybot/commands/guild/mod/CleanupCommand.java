@@ -20,12 +20,15 @@ package ml.duncte123.skybot.commands.guild.mod;
 
 import ml.duncte123.skybot.objects.command.Command;
 import ml.duncte123.skybot.objects.command.CommandCategory;
+import ml.duncte123.skybot.utils.AirUtils;
 import ml.duncte123.skybot.utils.MessageUtils;
 import net.dv8tion.jda.core.Permission;
 import net.dv8tion.jda.core.entities.Message;
 import net.dv8tion.jda.core.events.message.guild.GuildMessageReceivedEvent;
+import net.dv8tion.jda.core.utils.MiscUtil;
 
 import java.time.OffsetDateTime;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -71,6 +74,14 @@ public class CleanupCommand extends Command {
             }
         }
 
+        //We don't know which messages are pinned, so we only use the messages that we have seen when we don't have to care about that
+        long[] recent = keepPinned ? null : AirUtils.RECENT_MESSAGES.getLatest(event.getChannel().getIdLong(), total);
+
+        if (recent != null) {
+            deleteRecent(event, recent);
+            return;
+        }
+
         try {
             final Boolean keepPinnedFinal = keepPinned;
             event.getChannel().getHistory().retrievePast(total).queue(msgLst -> {
@@ -101,6 +112,31 @@ public class CleanupCommand extends Command {
         }
     }
 
+    /**
+     * This deletes the messages that we have seen in the channel without getting the history first
+     */
+    private void deleteRecent(GuildMessageReceivedEvent event, long[] ids) {
+        OffsetDateTime twoWeeksAgo = OffsetDateTime.now().minusWeeks(2);
+        List<String> toDelete = Arrays.stream(ids)
+                .filter(id -> MiscUtil.getCreationTime(id).isAfter(twoWeeksAgo))
+                .mapToObj(Long::toString)
+                .collect(Collectors.toList());
+        int failed = ids.length - toDelete.size();
+
+        if (toDelete.size() < 3) {
+            failed += toDelete.size();
+            toDelete.clear();
+        } else {
+            event.getChannel().deleteMessagesByIds(toDelete).queue(null, ignored -> {
+            });
+        }
+
+        MessageUtils.sendMsgFormatAndDeleteAfter(event, 10, TimeUnit.SECONDS,
+                "Removed %d messages!\nIt failed for %d messages!", toDelete.size(), failed);
+        logger.debug(toDelete.size() + " messages removed in channel " +
+                event.getChannel().getName() + " on guild " + event.getGuild().getName());
+    }
+
     @Override
     public String help() {
         return "Performs a cleanup in the channel where the command is run.\n" +
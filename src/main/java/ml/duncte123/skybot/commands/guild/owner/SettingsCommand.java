@@ -23,6 +23,7 @@ import ml.duncte123.skybot.objects.command.Command;
 import ml.duncte123.skybot.objects.command.CommandCategory;
 import ml.duncte123.skybot.objects.guild.GuildSettings;
 import ml.duncte123.skybot.utils.AirUtils;
+import ml.duncte123.skybot.utils.BadWordMatcher;
 import ml.duncte123.skybot.utils.EmbedUtils;
 import ml.duncte123.skybot.utils.GuildSettingsUtils;
 import net.dv8tion.jda.core.Permission;
@@ -41,6 +42,9 @@ import static ml.duncte123.skybot.utils.MessageUtils.*;
 
 public class SettingsCommand extends Command {
 
+    private static final int MAX_WORDS = 50;
+    private static final int MAX_WORD_LENGTH = 32;
+
     public SettingsCommand() {
         this.category = CommandCategory.MOD_ADMIN;
         this.displayAliasesInHelp = true;
@@ -57,6 +61,12 @@ public class SettingsCommand extends Command {
         Guild guild = event.getGuild();
         GuildSettings settings = getSettings(guild);
         boolean isEnabled;
+
+        //Without the database we only have the defaults, changing those would overwrite the real settings
+        if (!"settings".equals(invoke) && !"options".equals(invoke) && !GuildSettingsUtils.isLoaded(guild)) {
+            sendMsg(event, "I can't reach the database right now, please try again later");
+            return;
+        }
         switch (invoke) {
             case "settings":
             case "options": {
@@ -67,6 +77,8 @@ public class SettingsCommand extends Command {
                 MessageEmbed message = EmbedUtils.embedMessage("Here are the settings from this guild.\n" +
                         "**Show join/leave messages:** " + boolToEmoji(settings.isEnableJoinMessage()) + "\n" +
                         "**Swearword filter:** " + boolToEmoji(settings.isEnableSwearFilter()) + "\n" +
+                        "**Custom swearwords:** " + settings.getSwearDenyWords().length + " blocked, "
+                        + settings.getSwearAllowWords().length + " allowed\n" +
                         "**Announce next track:** " + boolToEmoji(settings.isAnnounceTracks()) + "\n" +
                         "**Auto de-hoist:** " + boolToEmoji(settings.isAutoDeHoist()) + "\n" +
                         "**Filter Discord invites:** " + boolToEmoji(settings.isFilterInvites()) + "\n" +
@@ -251,7 +263,8 @@ public class SettingsCommand extends Command {
                 boolean shouldAutoDeHoist = !settings.isAutoDeHoist();
                 GuildSettingsUtils.updateGuildSettings(guild, settings.setAutoDeHoist(shouldAutoDeHoist));
                 sendMsg(event, "Auto de-hoisting has been **"
-                        + (shouldAutoDeHoist ? "enabled" : "disabled") + "**");
+                        + (shouldAutoDeHoist ? "enabled" : "disabled") + "**"
+                        + (shouldAutoDeHoist ? "\nUse `" + PREFIX + "dehoist all` to de-hoist the members that are already here" : ""));
                 break;
 
             case "togglespamfilter":
@@ -321,7 +334,84 @@ public class SettingsCommand extends Command {
                 String steps = Arrays.stream(rates).mapToObj(String::valueOf).collect(Collectors.joining(", ", "", " minutes"));
                 sendMsg(event, "The new rates are " + steps);
                 break;
+
+            case "swearwords":
+                swearWords(args, event, guild, settings);
+                break;
+        }
+    }
+
+    private void swearWords(String[] args, GuildMessageReceivedEvent event, Guild guild, GuildSettings settings) {
+        if (args.length == 0 || "list".equals(args[0])) {
+            sendMsg(event, "**Blocked words:** " + listWords(settings.getSwearDenyWords()) + "\n" +
+                    "**Allowed words:** " + listWords(settings.getSwearAllowWords()));
+            return;
+        }
+
+        if (args.length < 2) {
+            sendMsg(event, "Incorrect usage: `" + PREFIX + "swearwords <list/block/allow/remove> [word]`");
+            return;
+        }
+
+        String word = StringUtils.join(Arrays.copyOfRange(args, 1, args.length), " ").toLowerCase();
+
+        switch (args[0]) {
+            case "block":
+            case "deny":
+            case "allow":
+                if (!BadWordMatcher.isMatchable(word) || word.length() > MAX_WORD_LENGTH) {
+                    sendMsg(event, "Words can only contain letters and spaces and can't be longer than " + MAX_WORD_LENGTH + " characters.");
+                    return;
+                }
+
+                boolean allow = "allow".equals(args[0]);
+
+                //The filter looks for blocked words without the spaces, so "bad word" would only ever find "badword"
+                if (!allow && word.indexOf(' ') != -1) {
+                    sendMsg(event, "Blocked words can't contain spaces, block the words one by one instead.");
+                    return;
+                }
+
+                String[] words = allow ? settings.getSwearAllowWords() : settings.getSwearDenyWords();
+
+                if (words.length >= MAX_WORDS) {
+                    sendMsg(event, "You can only have " + MAX_WORDS + " words in a list.");
+                    return;
+                }
+
+                if (!Arrays.asList(words).contains(word)) {
+                    // a new array so the filter knows that it has to compile the words again
+                    String[] newWords = Arrays.copyOf(words, words.length + 1);
+                    newWords[words.length] = word;
+                    GuildSettingsUtils.updateGuildSettings(guild,
+                            allow ? settings.setSwearAllowWords(newWords) : settings.setSwearDenyWords(newWords));
+                }
+
+                sendMsg(event, "`" + word + "` is now " + (allow ? "allowed" : "blocked") + " in this guild.");
+                break;
+
+            case "remove":
+                String[] deny = removeWord(settings.getSwearDenyWords(), word);
+                String[] allowed = removeWord(settings.getSwearAllowWords(), word);
+                GuildSettingsUtils.updateGuildSettings(guild, settings.setSwearDenyWords(deny).setSwearAllowWords(allowed));
+                sendMsg(event, "`" + word + "` has been removed from the lists.");
+                break;
+
+            default:
+                sendMsg(event, "Incorrect usage: `" + PREFIX + "swearwords <list/block/allow/remove> [word]`");
+        }
+    }
+
+    private String[] removeWord(String[] words, String word) {
+        if (!Arrays.asList(words).contains(word)) {
+            return words;
         }
+
+        return Arrays.stream(words).filter(it -> !it.equals(word)).toArray(String[]::new);
+    }
+
+    private String listWords(String[] words) {
+        return words.length == 0 ? "none" : "`" + String.join("`, `", words) + "`";
     }
 
     private boolean roleCheck(GuildMessageReceivedEvent event, List<Role> rolesFound) {
@@ -398,6 +488,9 @@ public class SettingsCommand extends Command {
             case "togglekickmode":
                 return "Toggles whether we should kick or assign a role for spammers.\n" +
                         "Usage: `" + PREFIX + invoke + "`";
+            case "swearwords":
+                return "Blocks or allows words in the swearword filter for this guild.\n" +
+                        "Usage: `" + PREFIX + invoke + " <list/block/allow/remove> [word]`";
 
             default:
                 return "invalid invoke";
@@ -423,7 +516,8 @@ public class SettingsCommand extends Command {
                 "`" + PREFIX + "togglespamfilter` => Toggles whether we should handle your incoming spam.\n" +
                 "`" + PREFIX + "spamrole <role>` => Gives members a role when they spam.\n" +
                 "`" + PREFIX + "setratelimits <1|2|3|4|5|6>` => Sets our cooldown for un-muting your spammer of choice.\n" +
-                "`" + PREFIX + "togglekickmode` => Toggles whether we should kick or assign a role for spammers.\n"
+                "`" + PREFIX + "togglekickmode` => Toggles whether we should kick or assign a role for spammers.\n" +
+                "`" + PREFIX + "swearwords <list/block/allow/remove> [word]` => Blocks or allows words in the swearword filter.\n"
                 ;
     }
 
@@ -456,7 +550,8 @@ public class SettingsCommand extends Command {
                 "togglespamfilter",
                 "spamrole",
                 "setratelimits",
-                "togglekickmode"
+                "togglekickmode",
+                "swearwords"
         };
     }
 
@@ -22,11 +22,17 @@ import ml.duncte123.skybot.utils.AirUtils;
 
 import java.io.File;
 import java.sql.Connection;
+import java.util.concurrent.TimeUnit;
 
 public class DBManager {
 
     public final DBConnectionManager connManager;
 
+    /**
+     * This runs the database work off the JDA threads
+     */
+    private final DatabaseExecutor executor;
+
     /**
      * This is the database name
      */
@@ -37,6 +43,7 @@ public class DBManager {
     public DBManager() {
         this.connManager = createDBManager();
         this.name = connManager.getName();
+        this.executor = createExecutor();
     }
 
     private static DBConnectionManager createDBManager() {
@@ -44,6 +51,15 @@ public class DBManager {
         return new SQLiteDatabaseConnectionManager(new File("database.db"));
     }
 
+    private static DatabaseExecutor createExecutor() {
+        //SQLite only has one connection so more threads would just wait on each other
+        int threads = AirUtils.NONE_SQLITE ? Math.max(1, AirUtils.CONFIG.getInt("sql.executor.threads", 4)) : 1;
+
+        return new DatabaseExecutor(threads,
+                Math.max(1, AirUtils.CONFIG.getInt("sql.executor.queueSize", 500)),
+                TimeUnit.SECONDS.toMillis(AirUtils.CONFIG.getInt("sql.executor.timeoutSeconds", 10)));
+    }
+
     /**
      * This will check the connection for us
      *
@@ -81,4 +97,13 @@ public class DBManager {
     public DBConnectionManager getConnManager() {
         return connManager;
     }
+
+    /**
+     * Returns the executor that runs the database work in the background
+     *
+     * @return the {@link DatabaseExecutor DatabaseExecutor}
+     */
+    public DatabaseExecutor getExecutor() {
+        return executor;
+    }
 }
@@ -0,0 +1,238 @@
+/*
+ * Skybot, a multipurpose discord bot
+ *      Copyright (C) 2017 - 2018  Duncan "duncte123" Sterken & Ramid "ramidzkh" Khan & Maurice R S "Sanduhr32"
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ml.duncte123.skybot.connections.database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This runs the database work on a few threads of its own so the JDA threads never have to wait on the database.
+ * <p>
+ * Every task gives back a {@link CompletableFuture} that fails with a {@link TimeoutException} when the task takes too long
+ * and with a {@link RejectedExecutionException} when too many tasks are waiting already.
+ * The callbacks on the future run on the database thread, so don't block in them
+ */
+public class DatabaseExecutor implements DatabaseExecutorMBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(DatabaseExecutor.class);
+
+    private final ThreadPoolExecutor workers;
+    private final ScheduledThreadPoolExecutor timeouts;
+    private final long defaultTimeoutMillis;
+
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final LongAdder totalRunNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * @param threads              the amount of database threads
+     * @param maxQueueSize         the max amount of tasks that can wait for a thread
+     * @param defaultTimeoutMillis how long a task may take before its future fails, 0 means no timeout
+     */
+    public DatabaseExecutor(int threads, int maxQueueSize, long defaultTimeoutMillis) {
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(maxQueueSize),
+                r -> {
+                    Thread t = new Thread(r, "Database-Thread-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.workers.allowCoreThreadTimeOut(true);
+
+        this.timeouts = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "Database-Timeout-Thread");
+            t.setDaemon(true);
+            return t;
+        });
+        this.timeouts.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * This runs a task on a database thread with the default timeout
+     *
+     * @param task the task to run
+     * @param <T>  what the task returns
+     * @return a future that completes with what the task returned
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        return submit(task, defaultTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * This runs a task on a database thread.
+     * When the task is still waiting for a thread after the timeout it will not run at all,
+     * when it is already running it finishes but the result is thrown away
+     *
+     * @param task    the task to run
+     * @param timeout how long the task may take, 0 means no timeout
+     * @param unit    the unit of the timeout
+     * @param <T>     what the task returns
+     * @return a future that completes with what the task returned
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task, long timeout, TimeUnit unit) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final long queuedAt = System.nanoTime();
+        final Future<?> running;
+
+        try {
+            running = workers.submit(() -> {
+                //Timed out while it was waiting
+                if (future.isDone()) {
+                    return;
+                }
+
+                long started = System.nanoTime();
+                recordWait(started - queuedAt);
+
+                try {
+                    future.complete(task.call());
+                } catch (Throwable thr) {
+                    failed.increment();
+                    future.completeExceptionally(thr);
+                } finally {
+                    executed.increment();
+                    totalRunNanos.add(System.nanoTime() - started);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        if (timeout > 0) {
+            ScheduledFuture<?> timer = timeouts.schedule(() -> {
+                if (future.completeExceptionally(new TimeoutException("Database task took longer than " + unit.toMillis(timeout) + "ms"))) {
+                    timedOut.increment();
+                    running.cancel(false);
+                }
+            }, timeout, unit);
+
+            future.whenComplete((result, error) -> timer.cancel(false));
+        }
+
+        return future;
+    }
+
+    /**
+     * This runs a task that does not return anything on a database thread with the default timeout
+     *
+     * @param task the task to run
+     * @return a future that completes when the task is done
+     */
+    public CompletableFuture<Void> execute(Runnable task) {
+        return submit(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    private void recordWait(long waited) {
+        totalWaitNanos.add(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+    }
+
+    /**
+     * Stops accepting new tasks and waits a bit for the tasks that are still waiting
+     */
+    public void shutdown() {
+        workers.shutdown();
+
+        try {
+            if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warn("There were still {} database tasks waiting on shutdown", workers.getQueue().size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        timeouts.shutdownNow();
+    }
+
+    /**
+     * This registers the executor with the platform MBean server so that it can be read over JMX
+     */
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(this, new ObjectName("ml.duncte123.skybot:type=DatabaseExecutor"));
+        } catch (Exception e) {
+            logger.warn("Could not register the database executor with JMX", e);
+        }
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return workers.getQueue().size();
+    }
+
+    @Override
+    public int getActiveThreads() {
+        return workers.getActiveCount();
+    }
+
+    @Override
+    public long getExecutedCount() {
+        return executed.sum();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public long getTimeoutCount() {
+        return timedOut.sum();
+    }
+
+    @Override
+    public double getAverageWaitMillis() {
+        long count = executed.sum();
+        return count == 0 ? 0 : totalWaitNanos.sum() / (double) count / 1_000_000D;
+    }
+
+    @Override
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000D;
+    }
+
+    @Override
+    public double getAverageRunMillis() {
+        long count = executed.sum();
+        return count == 0 ? 0 : totalRunNanos.sum() / (double) count / 1_000_000D;
+    }
+}
@@ -18,27 +18,45 @@
 
 package ml.duncte123.skybot.connections.database;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 import ml.duncte123.skybot.utils.AirUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Represents a server database
+ * <p>
+ * The connections come from a pool, closing a connection gives it back to the pool so the next caller does not have to connect again.
+ * The pool also starts when MySQL is down and the schema is brought up to date with the first connection that we get
  */
 @SuppressWarnings("SqlDialectInspection")
 class MySQLConnectionManager
         implements DBConnectionManager {
 
+    /**
+     * How long we wait before we try the migrations again when they failed
+     */
+    private static final long MIGRATION_RETRY_DELAY = TimeUnit.MINUTES.toMillis(1);
+
+    private static final Logger logger = LoggerFactory.getLogger(MySQLConnectionManager.class);
+
     private final String dbHost;
     private final String user;
     private final int port;
     private final String dbName;
     private final String pass;
-    private Connection connection;
+    private final PoolMetrics metrics = new PoolMetrics();
+    private HikariDataSource dataSource;
+    private volatile boolean migrated = false;
+    private long nextMigration = 0;
 
     MySQLConnectionManager() {
         this.dbHost = AirUtils.CONFIG.getString("sql.host", "sql.example.com");
@@ -46,33 +64,54 @@ class MySQLConnectionManager
         this.user = AirUtils.CONFIG.getString("sql.username", "exampleUser");
         this.pass = AirUtils.CONFIG.getString("sql.password", "Ex@mplePAss");
         this.dbName = AirUtils.CONFIG.getString("sql.database", "Example_database");
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("SkyBot-MySQL");
+        config.setDriverClassName("com.mysql.jdbc.Driver");
+        config.setJdbcUrl(String.format("jdbc:mysql://%s:%s/%s?useUnicode=true&characterEncoding=UTF-8", dbHost, port, dbName));
+        config.setUsername(user);
+        config.setPassword(pass);
+        config.setMaximumPoolSize(AirUtils.CONFIG.getInt("sql.pool.maxSize", 10));
+        config.setMinimumIdle(Math.min(2, config.getMaximumPoolSize()));
+        config.setMaxLifetime(TimeUnit.MINUTES.toMillis(AirUtils.CONFIG.getInt("sql.pool.maxLifetimeMinutes", 30)));
+        config.setLeakDetectionThreshold(TimeUnit.SECONDS.toMillis(AirUtils.CONFIG.getInt("sql.pool.leakDetectionSeconds", 30)));
+        //The driver that we use is too old for the pool to trust Connection.isValid
+        config.setConnectionTestQuery("SELECT 1");
+        //The settings are still loaded on the shard threads, they should not wait the default 30 seconds for a connection
+        config.setConnectionTimeout(TimeUnit.SECONDS.toMillis(AirUtils.CONFIG.getInt("sql.pool.connectionTimeoutSeconds", 5)));
+        //Start the pool even when MySQL is down, it keeps trying in the background so we can connect again once MySQL is back
+        config.setInitializationFailTimeout(-1);
+        config.setMetricsTrackerFactory(metrics);
+
         try {
-            Class.forName("com.mysql.jdbc.Driver");
-            this.connection = DriverManager.getConnection(
-                    String.format("jdbc:mysql://%s:%s/%s?useUnicode=true&characterEncoding=UTF-8", dbHost, port, dbName),
-                    user, pass);
-        } catch (SQLException | ClassNotFoundException e) {
+            this.dataSource = new HikariDataSource(config);
+            metrics.registerMBean();
+        } catch (Exception e) {
             e.printStackTrace();
         }
-
-        innitDB(getConnection());
     }
 
     /**
-     * This will connect to the database for us and return the connection
+     * This borrows a connection from the pool, close it when you are done to give it back
      *
-     * @return The connection to the database
+     * @return The connection to the database or null if we can't connect
      */
     public Connection getConnection() {
         if (!isConnected()) {
-            try {
-                Class.forName("com.mysql.jdbc.Driver");
-                this.connection = DriverManager.getConnection(
-                        String.format("jdbc:mysql://%s:%s/%s?useUnicode=true&characterEncoding=UTF-8", dbHost, port, dbName),
-                        user, pass);
-            } catch (SQLException | ClassNotFoundException e) {
-                e.printStackTrace();
-            }
+            return null;
+        }
+
+        Connection connection;
+
+        try {
+            connection = dataSource.getConnection();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        if (!migrated) {
+            innitDB(connection);
         }
 
         return connection;
@@ -93,18 +132,13 @@ class MySQLConnectionManager
     }
 
     /**
-     * This will check if the database is connected
+     * This will check if the pool is running
      *
      * @return true if we are connected
      */
     @Override
     public boolean isConnected() {
-        try {
-            return connection != null && !connection.isClosed();
-        } catch (Exception e) {
-            e.printStackTrace();
-            return false;
-        }
+        return dataSource != null && !dataSource.isClosed();
     }
 
     /**
@@ -117,65 +151,36 @@ class MySQLConnectionManager
         return dbName;
     }
 
+    /**
+     * Returns how busy the connection pool is
+     *
+     * @return the metrics of the connection pool
+     */
+    public PoolMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * This closes all the connections in the pool
+     */
     @Override
-    public void close() throws IOException {
-        try {
-            if (isConnected())
-                connection.close();
-        } catch (SQLException e) {
-            throw new IOException(e);
+    public void close() {
+        if (isConnected()) {
+            dataSource.close();
         }
     }
 
-    private void innitDB(Connection connection) {
+    /**
+     * This runs the migrations on a connection that the caller keeps using, when they fail we try again a minute later
+     */
+    private synchronized void innitDB(Connection connection) {
+        if (migrated || System.currentTimeMillis() < nextMigration) {
+            return;
+        }
+
         try {
-            connection.createStatement().execute("CREATE TABLE IF NOT EXISTS `bans` (\n" +
-                    "  `id` int(11) NOT NULL AUTO_INCREMENT,\n" +
-                    "  `modUserId` varchar(255) NOT NULL,\n" +
-                    "  `userId` varchar(300) NOT NULL,\n" +
-                    "  `Username` varchar(266) NOT NULL,\n" +
-                    "  `discriminator` varchar(4) NOT NULL,\n" +
-                    "  `ban_date` datetime NOT NULL,\n" +
-                    "  `unban_date` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP,\n" +
-                    "  `guildId` varchar(266) NOT NULL,\n" +
-                    "  PRIMARY KEY (`id`)\n" +
-                    ") ENGINE=MyISAM DEFAULT CHARSET=utf8mb4 COLLATE utf8mb4_general_ci;");
-            connection.createStatement().execute("CREATE TABLE IF NOT EXISTS `footerQuotes` (\n" +
-                    "  `id` int(11) NOT NULL AUTO_INCREMENT,\n" +
-                    "  `name` varchar(200) NOT NULL COMMENT 'Username',\n" +
-                    "  `quote` text NOT NULL COMMENT 'Quote',\n" +
-                    "  PRIMARY KEY (`id`)\n" +
-                    ") ENGINE=MyISAM DEFAULT CHARSET=utf8mb4 COLLATE utf8mb4_general_ci;");
-            connection.createStatement().execute("CREATE TABLE IF NOT EXISTS `tags` (\n" +
-                    "  `id` int(11) NOT NULL AUTO_INCREMENT,\n" +
-                    "  `author` varchar(255) NOT NULL,\n" +
-                    "  `authorId` varchar(255) NOT NULL,\n" +
-                    "  `tagName` varchar(10) NOT NULL,\n" +
-                    "  `tagText` text NOT NULL,\n" +
-                    "  PRIMARY KEY (`id`)\n" +
-                    ") ENGINE=MyISAM DEFAULT CHARSET=utf8mb4 COLLATE utf8mb4_general_ci;");
-            connection.createStatement().execute("CREATE TABLE IF NOT EXISTS `guildSettings` (\n" +
-                    "  `id` int(11) NOT NULL AUTO_INCREMENT,\n" +
-                    "  `guildId` text NOT NULL,\n" +
-                    "  `guildName` text CHARACTER SET utf8mb4,\n" +
-                    "  `prefix` varchar(255) NOT NULL DEFAULT '/',\n" +
-                    "  `autoRole` varchar(255) DEFAULT NULL,\n" +
-                    "  `enableJoinMessage` tinyint(1) NOT NULL DEFAULT '0',\n" +
-                    "  `enableSwearFilter` tinyint(1) NOT NULL DEFAULT '0',\n" +
-                    "  `autoDeHoist` tinyint(1) NOT NULL DEFAULT '0',\n" +
-                    "  `filterInvites` tinyint(1) NOT NULL DEFAULT '0',\n" +
-                    "  `announceNextTrack` tinyint(1) NOT NULL DEFAULT '1',\n" +
-                    "  `customWelcomeMessage` text CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_520_ci DEFAULT NULL,\n" +
-                    "  `customLeaveMessage` text DEFAULT NULL,\n" +
-                    "  `serverDesc` text DEFAULT NULL,\n" +
-                    "  `logChannelId` varchar(255) DEFAULT NULL,\n" +
-                    "  `welcomeLeaveChannel` varchar(255) DEFAULT NULL,\n" +
-                    "  `spamFilterState` tinyint(1) NOT NULL DEFAULT '0',\n" +
-                    "  `kickInsteadState` tinyint(1) NOT NULL DEFAULT '0',\n" +
-                    "  `muteRoleId` varchar(255) DEFAULT NULL,\n" +
-                    "  `ratelimits` text CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_520_ci DEFAULT NULL,\n" +
-                    "PRIMARY KEY (`id`)\n" +
-                    ") ENGINE=MyISAM DEFAULT CHARSET=utf8mb4 COLLATE utf8mb4_general_ci;");
+            migrations().migrate(connection);
+
             ResultSet res = connection.createStatement().executeQuery("SELECT COUNT(*) AS items FROM footerQuotes");
             while (res.next()) {
                 if (res.getInt("items") == 0) {
@@ -183,9 +188,184 @@ class MySQLConnectionManager
                             "VALUES (DEFAULT, 'duncte123', 'FIRST')");
                 }
             }
-            close();
-        } catch (SQLException | IOException e) {
-            e.printStackTrace();
+
+            migrated = true;
+        } catch (SQLException e) {
+            nextMigration = System.currentTimeMillis() + MIGRATION_RETRY_DELAY;
+            logger.error("Could not bring the database up to date, trying again in a minute", e);
+        }
+    }
+
+    /**
+     * The migrations of the schema, never change one that is already released, add a new one instead
+     */
+    private SchemaMigrator migrations() {
+        return new SchemaMigrator("MySQL")
+                .add(1, "Create the tables", connection -> {
+                    connection.createStatement().execute("CREATE TABLE IF NOT EXISTS `bans` (\n" +
+                            "  `id` int(11) NOT NULL AUTO_INCREMENT,\n" +
+                            "  `modUserId` varchar(255) NOT NULL,\n" +
+                            "  `userId` varchar(300) NOT NULL,\n" +
+                            "  `Username` varchar(266) NOT NULL,\n" +
+                            "  `discriminator` varchar(4) NOT NULL,\n" +
+                            "  `ban_date` datetime NOT NULL,\n" +
+                            "  `unban_date` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP,\n" +
+                            "  `guildId` varchar(266) NOT NULL,\n" +
+                            "  PRIMARY KEY (`id`)\n" +
+                            ") ENGINE=MyISAM DEFAULT CHARSET=utf8mb4 COLLATE utf8mb4_general_ci;");
+                    connection.createStatement().execute("CREATE TABLE IF NOT EXISTS `footerQuotes` (\n" +
+                            "  `id` int(11) NOT NULL AUTO_INCREMENT,\n" +
+                            "  `name` varchar(200) NOT NULL COMMENT 'Username',\n" +
+                            "  `quote` text NOT NULL COMMENT 'Quote',\n" +
+                            "  PRIMARY KEY (`id`)\n" +
+                            ") ENGINE=MyISAM DEFAULT CHARSET=utf8mb4 COLLATE utf8mb4_general_ci;");
+                    connection.createStatement().execute("CREATE TABLE IF NOT EXISTS `tags` (\n" +
+                            "  `id` int(11) NOT NULL AUTO_INCREMENT,\n" +
+                            "  `author` varchar(255) NOT NULL,\n" +
+                            "  `authorId` varchar(255) NOT NULL,\n" +
+                            "  `tagName` varchar(10) NOT NULL,\n" +
+                            "  `tagText` text NOT NULL,\n" +
+                            "  PRIMARY KEY (`id`)\n" +
+                            ") ENGINE=MyISAM DEFAULT CHARSET=utf8mb4 COLLATE utf8mb4_general_ci;");
+                    connection.createStatement().execute("CREATE TABLE IF NOT EXISTS `guildSettings` (\n" +
+                            "  `id` int(11) NOT NULL AUTO_INCREMENT,\n" +
+                            "  `guildId` text NOT NULL,\n" +
+                            "  `guildName` text CHARACTER SET utf8mb4,\n" +
+                            "  `prefix` varchar(255) NOT NULL DEFAULT '/',\n" +
+                            "  `autoRole` varchar(255) DEFAULT NULL,\n" +
+                            "  `enableJoinMessage` tinyint(1) NOT NULL DEFAULT '0',\n" +
+                            "  `enableSwearFilter` tinyint(1) NOT NULL DEFAULT '0',\n" +
+                            "  `autoDeHoist` tinyint(1) NOT NULL DEFAULT '0',\n" +
+                            "  `filterInvites` tinyint(1) NOT NULL DEFAULT '0',\n" +
+                            "  `announceNextTrack` tinyint(1) NOT NULL DEFAULT '1',\n" +
+                            "  `customWelcomeMessage` text CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_520_ci DEFAULT NULL,\n" +
+                            "  `customLeaveMessage` text DEFAULT NULL,\n" +
+                            "  `serverDesc` text DEFAULT NULL,\n" +
+                            "  `logChannelId` varchar(255) DEFAULT NULL,\n" +
+                            "  `welcomeLeaveChannel` varchar(255) DEFAULT NULL,\n" +
+                            "  `spamFilterState` tinyint(1) NOT NULL DEFAULT '0',\n" +
+                            "  `kickInsteadState` tinyint(1) NOT NULL DEFAULT '0',\n" +
+                            "  `muteRoleId` varchar(255) DEFAULT NULL,\n" +
+                            "  `ratelimits` text CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_520_ci DEFAULT NULL,\n" +
+                            "  `swearDenyWords` text DEFAULT NULL,\n" +
+                            "  `swearAllowWords` text DEFAULT NULL,\n" +
+                            "  `updated_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,\n" +
+                            "PRIMARY KEY (`id`),\n" +
+                            "KEY `updated_at` (`updated_at`)\n" +
+                            ") ENGINE=MyISAM DEFAULT CHARSET=utf8mb4 COLLATE utf8mb4_general_ci;");
+                    connection.createStatement().execute("CREATE TABLE IF NOT EXISTS `warnings` (\n" +
+                            "  `id` int(11) NOT NULL AUTO_INCREMENT,\n" +
+                            "  `guildId` varchar(255) NOT NULL,\n" +
+                            "  `userId` varchar(255) NOT NULL,\n" +
+                            "  `modId` varchar(255) NOT NULL,\n" +
+                            "  `reason` text CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_520_ci DEFAULT NULL,\n" +
+                            "  `warn_date` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP,\n" +
+                            "  `synced` tinyint(1) NOT NULL DEFAULT '0',\n" +
+                            "  PRIMARY KEY (`id`)\n" +
+                            ") ENGINE=MyISAM DEFAULT CHARSET=utf8mb4 COLLATE utf8mb4_general_ci;");
+                    //Databases from before these columns existed don't get them from the create table
+                    addColumn(connection, "guildSettings", "`swearDenyWords` text DEFAULT NULL");
+                    addColumn(connection, "guildSettings", "`swearAllowWords` text DEFAULT NULL");
+                    addColumn(connection, "guildSettings", "`updated_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP");
+                    addIndex(connection, "guildSettings", "updated_at", "`updated_at`");
+                })
+                .add(2, "Move the tables to InnoDB",
+                        "ALTER TABLE `guildSettings` ENGINE=InnoDB",
+                        "ALTER TABLE `bans` ENGINE=InnoDB",
+                        "ALTER TABLE `tags` ENGINE=InnoDB",
+                        "ALTER TABLE `footerQuotes` ENGINE=InnoDB",
+                        "ALTER TABLE `warnings` ENGINE=InnoDB")
+                //MySQL commits every schema change by itself, every step checks if it already ran
+                //so a migration that failed half way can run again
+                .add(3, "Store the discord ids as numbers and index them", connection -> {
+                    //Rows that can't be converted are of no use, the code can't read them either
+                    execute(connection, "DELETE FROM `guildSettings` WHERE `guildId` NOT REGEXP '^[0-9]+$'");
+                    //Keep the newest settings when a guild is in there twice
+                    execute(connection, "DELETE FROM `guildSettings` WHERE `id` NOT IN " +
+                            "(SELECT `id` FROM (SELECT MAX(`id`) AS `id` FROM `guildSettings` GROUP BY `guildId`) AS `keep`)");
+                    makeBigint(connection, "guildSettings", "guildId");
+                    addKey(connection, "guildSettings", "UNIQUE KEY", "guildId", "`guildId`");
+
+                    //The first one that made the tag owns it
+                    execute(connection, "DELETE FROM `tags` WHERE `id` NOT IN " +
+                            "(SELECT `id` FROM (SELECT MIN(`id`) AS `id` FROM `tags` GROUP BY `tagName`) AS `keep`)");
+                    addKey(connection, "tags", "UNIQUE KEY", "tagName", "`tagName`");
+
+                    execute(connection, "DELETE FROM `bans` WHERE `guildId` NOT REGEXP '^[0-9]+$' OR `userId` NOT REGEXP '^[0-9]+$' " +
+                            "OR `modUserId` NOT REGEXP '^[0-9]+$'");
+                    makeBigint(connection, "bans", "modUserId");
+                    makeBigint(connection, "bans", "userId");
+                    makeBigint(connection, "bans", "guildId");
+                    addKey(connection, "bans", "KEY", "unban_date", "`unban_date`");
+                    addKey(connection, "bans", "KEY", "guildId_userId", "`guildId`, `userId`");
+
+                    execute(connection, "DELETE FROM `warnings` WHERE `guildId` NOT REGEXP '^[0-9]+$' OR `userId` NOT REGEXP '^[0-9]+$' " +
+                            "OR `modId` NOT REGEXP '^[0-9]+$'");
+                    makeBigint(connection, "warnings", "guildId");
+                    makeBigint(connection, "warnings", "userId");
+                    makeBigint(connection, "warnings", "modId");
+                    addKey(connection, "warnings", "KEY", "guildId_userId", "`guildId`, `userId`");
+                    addKey(connection, "warnings", "KEY", "synced", "`synced`");
+                });
+    }
+
+    private void execute(Connection connection, String sql) throws SQLException {
+        try (Statement smt = connection.createStatement()) {
+            smt.execute(sql);
+        }
+    }
+
+    /**
+     * This changes a column to a bigint when it is not one yet
+     */
+    private void makeBigint(Connection connection, String table, String column) throws SQLException {
+        try (PreparedStatement smt = connection.prepareStatement("SELECT DATA_TYPE FROM information_schema.COLUMNS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ?")) {
+            smt.setString(1, table);
+            smt.setString(2, column);
+
+            try (ResultSet res = smt.executeQuery()) {
+                if (res.next() && "bigint".equalsIgnoreCase(res.getString("DATA_TYPE"))) {
+                    return;
+                }
+            }
+        }
+
+        execute(connection, "ALTER TABLE `" + table + "` MODIFY `" + column + "` bigint(20) NOT NULL");
+    }
+
+    /**
+     * This adds a key when there is no key with that name yet
+     */
+    private void addKey(Connection connection, String table, String type, String name, String columns) throws SQLException {
+        try (PreparedStatement smt = connection.prepareStatement("SELECT 1 FROM information_schema.STATISTICS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND INDEX_NAME = ? LIMIT 1")) {
+            smt.setString(1, table);
+            smt.setString(2, name);
+
+            try (ResultSet res = smt.executeQuery()) {
+                if (res.next()) {
+                    return;
+                }
+            }
+        }
+
+        execute(connection, "ALTER TABLE `" + table + "` ADD " + type + " `" + name + "` (" + columns + ")");
+    }
+
+    private void addColumn(Connection connection, String table, String column) {
+        try {
+            connection.createStatement().execute("ALTER TABLE `" + table + "` ADD COLUMN " + column);
+        } catch (SQLException ignored) {
+            //The column is already there
+        }
+    }
+
+    private void addIndex(Connection connection, String table, String name, String columns) {
+        try {
+            connection.createStatement().execute("ALTER TABLE `" + table + "` ADD INDEX `" + name + "` (" + columns + ")");
+        } catch (SQLException ignored) {
+            //The index is already there
         }
     }
-}
\ No newline at end of file
+}
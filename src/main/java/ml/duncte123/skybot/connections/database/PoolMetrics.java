@@ -0,0 +1,135 @@
+/*
+ * Skybot, a multipurpose discord bot
+ *      Copyright (C) 2017 - 2018  Duncan "duncte123" Sterken & Ramid "ramidzkh" Khan & Maurice R S "Sanduhr32"
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ml.duncte123.skybot.connections.database;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This keeps track of how busy the connection pool is and how long the callers have to wait for a connection
+ */
+public class PoolMetrics implements MetricsTrackerFactory, PoolMetricsMBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(PoolMetrics.class);
+
+    private volatile PoolStats stats;
+
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder used = new LongAdder();
+    private final LongAdder totalUsageMillis = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.stats = poolStats;
+
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquired.increment();
+                totalWaitNanos.add(elapsedAcquiredNanos);
+                maxWaitNanos.accumulateAndGet(elapsedAcquiredNanos, Math::max);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                used.increment();
+                totalUsageMillis.add(elapsedBorrowedMillis);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeouts.increment();
+            }
+        };
+    }
+
+    /**
+     * This registers the metrics with the platform MBean server so that they can be read over JMX
+     */
+    void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(this, new ObjectName("ml.duncte123.skybot:type=DatabasePool"));
+        } catch (Exception e) {
+            logger.warn("Could not register the database pool with JMX", e);
+        }
+    }
+
+    @Override
+    public int getActiveConnections() {
+        PoolStats current = stats;
+        return current == null ? 0 : current.getActiveConnections();
+    }
+
+    @Override
+    public int getIdleConnections() {
+        PoolStats current = stats;
+        return current == null ? 0 : current.getIdleConnections();
+    }
+
+    @Override
+    public int getTotalConnections() {
+        PoolStats current = stats;
+        return current == null ? 0 : current.getTotalConnections();
+    }
+
+    @Override
+    public int getWaitingThreads() {
+        PoolStats current = stats;
+        return current == null ? 0 : current.getPendingThreads();
+    }
+
+    @Override
+    public long getAcquiredCount() {
+        return acquired.sum();
+    }
+
+    @Override
+    public double getAverageWaitMillis() {
+        long count = acquired.sum();
+        return count == 0 ? 0 : totalWaitNanos.sum() / (double) count / 1_000_000D;
+    }
+
+    @Override
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000D;
+    }
+
+    @Override
+    public double getAverageUsageMillis() {
+        long count = used.sum();
+        return count == 0 ? 0 : totalUsageMillis.sum() / (double) count;
+    }
+
+    @Override
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+}
@@ -126,54 +126,106 @@ class SQLiteDatabaseConnectionManager
      * @author duncte123
      */
     private void innitDB(Connection connection) {
-        //Not to self: SQLite doesn't have multi line queries
         try {
-            connection.createStatement().execute(
-                    "CREATE TABLE IF NOT EXISTS guildSettings " +
-                            "(id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                            "guildId TEXT NOT NULL," +
-                            "guildName TEXT NOT NULL," +
-                            "logChannelId TEXT NULL," +
-                            "welcomeLeaveChannel TEXT NULL," +
-                            "prefix VARCHAR(255) NOT NULL DEFAULT '" + Settings.PREFIX + "'," +
-                            "autoRole VARCHAR(255) NULL," +
-                            "enableJoinMessage tinyint(1) NOT NULL DEFAULT '0'," +
-                            "enableSwearFilter tinyint(1) NOT NULL DEFAULT '0'," +
-                            "autoDeHoist tinyint(1) NOT NULL DEFAULT '0'," +
-                            "filterInvites tinyint(1) NOT NULL DEFAULT '0'," +
-                            "announceNextTrack tinyint(1) NOT NULL DEFAULT '1'," +
-                            "customWelcomeMessage TEXT NOT NULL," +
-                            "serverDesc TEXT NULL," +
-                            "customLeaveMessage TEXT NOT NULL," +
-                            "spamFilterState tinyint(1) NOT NULL DEFAULT '0'," +
-                            "kickInsteadState tinyint(1) NOT NULL DEFAULT '0'," +
-                            "muteRoleId varchar(255) DEFAULT NULL," +
-                            "ratelimits TEXT DEFAULT NULL);"
-            );
-
-            connection.createStatement().execute(
-                    "CREATE TABLE IF NOT EXISTS `tags`" +
-                            "(id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                            "author VARCHAR(255) NOT NULL," +
-                            "authorId VARCHAR(255) NOT NULL," +
-                            "tagName VARCHAR(10) NOT NULL," +
-                            "tagText TEXT NOT NULL);"
-            );
-
-            connection.createStatement().execute(
-                    "CREATE TABLE IF NOT EXISTS bans" +
-                            "(id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                            "modUserId VARCHAR(255) NOT NULL," +
-                            "userId VARCHAR(255) NOT NULL," +
-                            "Username VARCHAR(255) NOT NULL," +
-                            "discriminator VARCHAR(4) NOT NULL," +
-                            "ban_date DATETIME NOT NULL," +
-                            "unban_date DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP," +
-                            "guildId VARCHAR(255) NOT NULL);"
-            );
+            migrations().migrate(connection);
             close();
         } catch (SQLException | IOException e) {
             e.printStackTrace();
         }
     }
+
+    /**
+     * The migrations of the schema, never change one that is already released, add a new one instead.
+     * SQLite can't change the type of a column so the ids stay text, the indexes work the same on them
+     */
+    private SchemaMigrator migrations() {
+        //Not to self: SQLite doesn't have multi line queries
+        return new SchemaMigrator("SQLite")
+                .add(1, "Create the tables", connection -> {
+                    connection.createStatement().execute(
+                            "CREATE TABLE IF NOT EXISTS guildSettings " +
+                                    "(id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                                    "guildId TEXT NOT NULL," +
+                                    "guildName TEXT NOT NULL," +
+                                    "logChannelId TEXT NULL," +
+                                    "welcomeLeaveChannel TEXT NULL," +
+                                    "prefix VARCHAR(255) NOT NULL DEFAULT '" + Settings.PREFIX + "'," +
+                                    "autoRole VARCHAR(255) NULL," +
+                                    "enableJoinMessage tinyint(1) NOT NULL DEFAULT '0'," +
+                                    "enableSwearFilter tinyint(1) NOT NULL DEFAULT '0'," +
+                                    "autoDeHoist tinyint(1) NOT NULL DEFAULT '0'," +
+                                    "filterInvites tinyint(1) NOT NULL DEFAULT '0'," +
+                                    "announceNextTrack tinyint(1) NOT NULL DEFAULT '1'," +
+                                    "customWelcomeMessage TEXT NOT NULL," +
+                                    "serverDesc TEXT NULL," +
+                                    "customLeaveMessage TEXT NOT NULL," +
+                                    "spamFilterState tinyint(1) NOT NULL DEFAULT '0'," +
+                                    "kickInsteadState tinyint(1) NOT NULL DEFAULT '0'," +
+                                    "muteRoleId varchar(255) DEFAULT NULL," +
+                                    "ratelimits TEXT DEFAULT NULL," +
+                                    "swearDenyWords TEXT DEFAULT NULL," +
+                                    "swearAllowWords TEXT DEFAULT NULL," +
+                                    "updated_at DATETIME DEFAULT NULL);"
+                    );
+
+                    //Databases from before these columns existed don't get them from the create table
+                    addColumn(connection, "guildSettings", "swearDenyWords TEXT DEFAULT NULL");
+                    addColumn(connection, "guildSettings", "swearAllowWords TEXT DEFAULT NULL");
+                    addColumn(connection, "guildSettings", "updated_at DATETIME DEFAULT NULL");
+                    connection.createStatement().execute(
+                            "CREATE INDEX IF NOT EXISTS guildSettings_updated_at ON guildSettings (updated_at);"
+                    );
+
+                    connection.createStatement().execute(
+                            "CREATE TABLE IF NOT EXISTS `tags`" +
+                                    "(id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                                    "author VARCHAR(255) NOT NULL," +
+                                    "authorId VARCHAR(255) NOT NULL," +
+                                    "tagName VARCHAR(10) NOT NULL," +
+                                    "tagText TEXT NOT NULL);"
+                    );
+
+                    connection.createStatement().execute(
+                            "CREATE TABLE IF NOT EXISTS bans" +
+                                    "(id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                                    "modUserId VARCHAR(255) NOT NULL," +
+                                    "userId VARCHAR(255) NOT NULL," +
+                                    "Username VARCHAR(255) NOT NULL," +
+                                    "discriminator VARCHAR(4) NOT NULL," +
+                                    "ban_date DATETIME NOT NULL," +
+                                    "unban_date DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP," +
+                                    "guildId VARCHAR(255) NOT NULL);"
+                    );
+
+                    connection.createStatement().execute(
+                            "CREATE TABLE IF NOT EXISTS warnings" +
+                                    "(id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                                    "guildId VARCHAR(255) NOT NULL," +
+                                    "userId VARCHAR(255) NOT NULL," +
+                                    "modId VARCHAR(255) NOT NULL," +
+                                    "reason TEXT NULL," +
+                                    "warn_date DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP," +
+                                    "synced tinyint(1) NOT NULL DEFAULT '0');"
+                    );
+                })
+                .add(2, "Index the discord ids and the unban dates",
+                        //Keep the newest settings when a guild is in there twice
+                        "DELETE FROM guildSettings WHERE id NOT IN (SELECT MAX(id) FROM guildSettings GROUP BY guildId);",
+                        "CREATE UNIQUE INDEX IF NOT EXISTS guildSettings_guildId ON guildSettings (guildId);",
+                        //The first one that made the tag owns it
+                        "DELETE FROM tags WHERE id NOT IN (SELECT MIN(id) FROM tags GROUP BY tagName);",
+                        "CREATE UNIQUE INDEX IF NOT EXISTS tags_tagName ON tags (tagName);",
+                        "CREATE INDEX IF NOT EXISTS bans_unban_date ON bans (unban_date);",
+                        "CREATE INDEX IF NOT EXISTS bans_guildId_userId ON bans (guildId, userId);",
+                        "CREATE INDEX IF NOT EXISTS warnings_guildId_userId ON warnings (guildId, userId);",
+                        "CREATE INDEX IF NOT EXISTS warnings_synced ON warnings (synced);");
+    }
+
+    private void addColumn(Connection connection, String table, String column) {
+        try {
+            connection.createStatement().execute("ALTER TABLE " + table + " ADD COLUMN " + column);
+        } catch (SQLException ignored) {
+            //The column is already there
+        }
+    }
 }
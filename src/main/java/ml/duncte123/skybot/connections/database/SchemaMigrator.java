@@ -0,0 +1,169 @@
+/*
+ * Skybot, a multipurpose discord bot
+ *      Copyright (C) 2017 - 2018  Duncan "duncte123" Sterken & Ramid "ramidzkh" Khan & Maurice R S "Sanduhr32"
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ml.duncte123.skybot.connections.database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This brings the schema of a database up to date with numbered migrations.
+ * <p>
+ * The versions that ran are stored in the {@code schema_version} table, so every migration only runs once.
+ * Migrations run in order and we stop at the first one that fails, the next start tries it again
+ */
+@SuppressWarnings("SqlDialectInspection")
+class SchemaMigrator {
+
+    private static final Logger logger = LoggerFactory.getLogger(SchemaMigrator.class);
+
+    private final String name;
+    private final List<Migration> migrations = new ArrayList<>();
+
+    /**
+     * @param name the name of the database for the logs
+     */
+    SchemaMigrator(String name) {
+        this.name = name;
+    }
+
+    /**
+     * This adds a migration that runs some statements
+     *
+     * @param version     the version of the schema after the migration, has to be higher than the one before
+     * @param description what the migration does
+     * @param statements  the statements to run in order
+     * @return this migrator so the calls can be chained
+     */
+    SchemaMigrator add(int version, String description, String... statements) {
+        return add(version, description, connection -> {
+            for (String statement : statements) {
+                try (Statement smt = connection.createStatement()) {
+                    smt.execute(statement);
+                }
+            }
+        });
+    }
+
+    /**
+     * This adds a migration that does its own work on the connection
+     *
+     * @param version     the version of the schema after the migration, has to be higher than the one before
+     * @param description what the migration does
+     * @param step        the work to do
+     * @return this migrator so the calls can be chained
+     */
+    SchemaMigrator add(int version, String description, Step step) {
+        if (!migrations.isEmpty() && migrations.get(migrations.size() - 1).version >= version) {
+            throw new IllegalArgumentException("Migration " + version + " has to come after " +
+                    migrations.get(migrations.size() - 1).version);
+        }
+
+        migrations.add(new Migration(version, description, step));
+        return this;
+    }
+
+    /**
+     * This runs the migrations that have not ran on the database yet
+     *
+     * @param connection the connection to use
+     * @return the version of the schema now
+     * @throws SQLException when a migration fails, the migrations before it are kept
+     */
+    int migrate(Connection connection) throws SQLException {
+        try (Statement smt = connection.createStatement()) {
+            smt.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                    "version INTEGER NOT NULL PRIMARY KEY," +
+                    "description VARCHAR(255) NOT NULL," +
+                    "applied_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+        }
+
+        int current = getVersion(connection);
+
+        for (Migration migration : migrations) {
+            if (migration.version <= current) {
+                continue;
+            }
+
+            logger.info("Migrating the {} database to version {}: {}", name, migration.version, migration.description);
+            apply(connection, migration);
+            current = migration.version;
+        }
+
+        logger.debug("The {} database is at version {}", name, current);
+        return current;
+    }
+
+    private void apply(Connection connection, Migration migration) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+
+        //MySQL commits every schema change by itself, SQLite can undo the whole migration when a part fails
+        connection.setAutoCommit(false);
+
+        try {
+            migration.step.apply(connection);
+
+            try (PreparedStatement smt = connection.prepareStatement("INSERT INTO schema_version (version, description) VALUES (?, ?)")) {
+                smt.setInt(1, migration.version);
+                smt.setString(2, migration.description);
+                smt.execute();
+            }
+
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw new SQLException("Migration " + migration.version + " of the " + name + " database failed", e);
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private int getVersion(Connection connection) throws SQLException {
+        try (Statement smt = connection.createStatement();
+             ResultSet res = smt.executeQuery("SELECT MAX(version) AS version FROM schema_version")) {
+            return res.next() ? res.getInt("version") : 0;
+        }
+    }
+
+    /**
+     * The work that a migration does
+     */
+    @FunctionalInterface
+    interface Step {
+        void apply(Connection connection) throws SQLException;
+    }
+
+    private static class Migration {
+        private final int version;
+        private final String description;
+        private final Step step;
+
+        private Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+}
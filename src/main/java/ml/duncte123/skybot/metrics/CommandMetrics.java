@@ -0,0 +1,221 @@
+/*
+ * Skybot, a multipurpose discord bot
+ *      Copyright (C) 2017 - 2018  Duncan "duncte123" Sterken & Ramid "ramidzkh" Khan & Maurice R S "Sanduhr32"
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ml.duncte123.skybot.metrics;
+
+import ml.duncte123.skybot.CommandExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This keeps track of how often the commands run, how often they fail and how long they take
+ */
+public class CommandMetrics implements CommandMetricsMBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommandMetrics.class);
+
+    private final Map<String, CommandStats> stats = new ConcurrentHashMap<>();
+    private final CommandExecutor executor;
+
+    /**
+     * @param executor the executor that runs the commands, used for the queue stats
+     */
+    public CommandMetrics(CommandExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * This records one run of a command
+     *
+     * @param command the name of the command
+     * @param nanos   how long the command took in nanoseconds
+     * @param failed  if the command threw an exception
+     */
+    public void record(String command, long nanos, boolean failed) {
+        CommandStats commandStats = getStats(command);
+
+        commandStats.invocations.increment();
+        if (failed) {
+            commandStats.errors.increment();
+        }
+        commandStats.latency.recordNanos(nanos);
+    }
+
+    /**
+     * This records a run of a command that was stopped by the rate limiter
+     *
+     * @param command the name of the command
+     */
+    public void recordRateLimited(String command) {
+        getStats(command).rateLimited.increment();
+    }
+
+    /**
+     * Returns the stats of a command, these get created if they don't exist
+     *
+     * @param command the name of the command
+     * @return the stats of the command
+     */
+    public CommandStats getStats(String command) {
+        CommandStats commandStats = stats.get(command);
+
+        if (commandStats == null) {
+            commandStats = stats.computeIfAbsent(command, CommandStats::new);
+        }
+
+        return commandStats;
+    }
+
+    /**
+     * Returns the stats of all the commands that have run, sorted on the amount of times that they ran
+     *
+     * @return the stats of all the commands that have run
+     */
+    public List<CommandStats> getAllStats() {
+        List<CommandStats> list = new ArrayList<>(stats.values());
+        list.sort(Comparator.comparingLong(CommandStats::getInvocations).reversed());
+        return list;
+    }
+
+    /**
+     * This registers the metrics with the platform MBean server so that they can be read over JMX
+     */
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(this, new ObjectName("ml.duncte123.skybot:type=CommandMetrics"));
+        } catch (Exception e) {
+            logger.warn("Could not register the command metrics with JMX", e);
+        }
+    }
+
+    @Override
+    public long getTotalInvocations() {
+        return stats.values().stream().mapToLong(CommandStats::getInvocations).sum();
+    }
+
+    @Override
+    public long getTotalErrors() {
+        return stats.values().stream().mapToLong(CommandStats::getErrors).sum();
+    }
+
+    @Override
+    public long getTotalRateLimited() {
+        return stats.values().stream().mapToLong(CommandStats::getRateLimited).sum();
+    }
+
+    @Override
+    public String[] getCommandNames() {
+        return stats.keySet().stream().sorted().toArray(String[]::new);
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return executor.getQueueDepth();
+    }
+
+    @Override
+    public int getActiveLanes() {
+        return executor.getActiveLanes();
+    }
+
+    @Override
+    public long getRejectedCommands() {
+        return executor.getRejectedCount();
+    }
+
+    @Override
+    public double getAverageQueueWaitMillis() {
+        return executor.getAverageWaitMillis();
+    }
+
+    @Override
+    public double getMaxQueueWaitMillis() {
+        return executor.getMaxWaitMillis();
+    }
+
+    @Override
+    public long getInvocations(String command) {
+        CommandStats commandStats = stats.get(command);
+        return commandStats == null ? 0 : commandStats.getInvocations();
+    }
+
+    @Override
+    public long getErrors(String command) {
+        CommandStats commandStats = stats.get(command);
+        return commandStats == null ? 0 : commandStats.getErrors();
+    }
+
+    @Override
+    public long getRateLimited(String command) {
+        CommandStats commandStats = stats.get(command);
+        return commandStats == null ? 0 : commandStats.getRateLimited();
+    }
+
+    @Override
+    public double getLatencyPercentileMillis(String command, double percentile) {
+        CommandStats commandStats = stats.get(command);
+        return commandStats == null ? 0 : commandStats.getLatency().getPercentileMillis(percentile);
+    }
+
+    @Override
+    public void reset() {
+        stats.clear();
+    }
+
+    /**
+     * The numbers for a single command
+     */
+    public static class CommandStats {
+        private final String name;
+        private final LongAdder invocations = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rateLimited = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private CommandStats(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getInvocations() {
+            return invocations.sum();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public long getRateLimited() {
+            return rateLimited.sum();
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Skybot, a multipurpose discord bot
+ *      Copyright (C) 2017 - 2018  Duncan "duncte123" Sterken & Ramid "ramidzkh" Khan & Maurice R S "Sanduhr32"
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ml.duncte123.skybot.metrics;
+
+/**
+ * The JMX view of the {@link CommandMetrics}
+ */
+public interface CommandMetricsMBean {
+
+    long getTotalInvocations();
+
+    long getTotalErrors();
+
+    long getTotalRateLimited();
+
+    String[] getCommandNames();
+
+    int getQueueDepth();
+
+    int getActiveLanes();
+
+    long getRejectedCommands();
+
+    double getAverageQueueWaitMillis();
+
+    double getMaxQueueWaitMillis();
+
+    long getInvocations(String command);
+
+    long getErrors(String command);
+
+    long getRateLimited(String command);
+
+    double getLatencyPercentileMillis(String command, double percentile);
+
+    void reset();
+}
@@ -0,0 +1,107 @@
+/*
+ * Skybot, a multipurpose discord bot
+ *      Copyright (C) 2017 - 2018  Duncan "duncte123" Sterken & Ramid "ramidzkh" Khan & Maurice R S "Sanduhr32"
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ml.duncte123.skybot.objects;
+
+/**
+ * This is a temporary ban that is stored in the database
+ */
+public class Ban {
+
+    private final int id;
+    private final String userId;
+    private final String userName;
+    private final String discriminator;
+    private final String guildId;
+    private final long unbanDate;
+
+    /**
+     * @param id            the id of the row in the database
+     * @param userId        the id of the banned user
+     * @param userName      the name of the banned user
+     * @param discriminator the discriminator of the banned user
+     * @param guildId       the id of the guild that the user is banned in
+     * @param unbanDate     when the user has to be unbanned in epoch millis
+     */
+    public Ban(int id, String userId, String userName, String discriminator, String guildId, long unbanDate) {
+        this.id = id;
+        this.userId = userId;
+        this.userName = userName;
+        this.discriminator = discriminator;
+        this.guildId = guildId;
+        this.unbanDate = unbanDate;
+    }
+
+    /**
+     * Returns the id of the row in the database
+     *
+     * @return the id of the row in the database
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the id of the banned user
+     *
+     * @return the id of the banned user
+     */
+    public String getUserId() {
+        return userId;
+    }
+
+    /**
+     * Returns the name of the banned user
+     *
+     * @return the name of the banned user
+     */
+    public String getUserName() {
+        return userName;
+    }
+
+    /**
+     * Returns the discriminator of the banned user
+     *
+     * @return the discriminator of the banned user
+     */
+    public String getDiscriminator() {
+        return discriminator;
+    }
+
+    /**
+     * Returns the id of the guild that the user is banned in
+     *
+     * @return the id of the guild that the user is banned in
+     */
+    public String getGuildId() {
+        return guildId;
+    }
+
+    /**
+     * Returns when the user has to be unbanned in epoch millis
+     *
+     * @return when the user has to be unbanned
+     */
+    public long getUnbanDate() {
+        return unbanDate;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Ban[%s, %s#%s, Guild: %s]", id, userName, discriminator, guildId);
+    }
+}
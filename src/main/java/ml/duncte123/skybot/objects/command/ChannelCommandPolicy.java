@@ -0,0 +1,139 @@
+/*
+ * Skybot, a multipurpose discord bot
+ *      Copyright (C) 2017 - 2018  Duncan "duncte123" Sterken & Ramid "ramidzkh" Khan & Maurice R S "Sanduhr32"
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ml.duncte123.skybot.objects.command;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * This holds the command rules that a channel has set in its topic.
+ * <p>
+ * The topic is split on {@code -} and every part is one of the following
+ * <ul>
+ * <li>{@code commands} blocks all the commands in the channel</li>
+ * <li>{@code category} blocks all the commands in that {@link CommandCategory category}</li>
+ * <li>{@code !category} only allows the commands in that {@link CommandCategory category}</li>
+ * <li>{@code name} or {@code !name} blocks the command that is invoked with that name</li>
+ * </ul>
+ */
+public class ChannelCommandPolicy {
+
+    /**
+     * The policy for channels that have nothing in their topic
+     */
+    public static final ChannelCommandPolicy EMPTY = new ChannelCommandPolicy(false, 0, 0, Collections.emptySet());
+
+    private final boolean blockAll;
+    private final int requiredCategories;
+    private final int blockedCategories;
+    private final Set<String> blockedNames;
+
+    private ChannelCommandPolicy(boolean blockAll, int requiredCategories, int blockedCategories, Set<String> blockedNames) {
+        this.blockAll = blockAll;
+        this.requiredCategories = requiredCategories;
+        this.blockedCategories = blockedCategories;
+        this.blockedNames = blockedNames;
+    }
+
+    /**
+     * This reads the directives out of a channel topic
+     *
+     * @param topic the topic of the channel, may be null
+     * @return the policy for the topic
+     */
+    public static ChannelCommandPolicy compile(String topic) {
+        if (topic == null || topic.isEmpty()) {
+            return EMPTY;
+        }
+
+        if (topic.contains("-commands")) {
+            return new ChannelCommandPolicy(true, 0, 0, Collections.emptySet());
+        }
+
+        int required = 0;
+        int blocked = 0;
+        Set<String> names = new HashSet<>();
+
+        for (String s : topic.split("-")) {
+            boolean whitelist = s.startsWith("!");
+
+            if (whitelist) {
+                int end = s.indexOf('!', 1);
+                s = s.substring(1, end == -1 ? s.length() : end);
+            }
+
+            CommandCategory category = getCategory(s);
+
+            if (category == null) {
+                if (!s.isEmpty()) {
+                    names.add(s.toLowerCase());
+                }
+            } else if (whitelist) {
+                required |= bit(category);
+            } else {
+                blocked |= bit(category);
+            }
+        }
+
+        if (required == 0 && blocked == 0 && names.isEmpty()) {
+            return EMPTY;
+        }
+
+        return new ChannelCommandPolicy(false, required, blocked,
+                names.isEmpty() ? Collections.emptySet() : Collections.unmodifiableSet(names));
+    }
+
+    /**
+     * This checks if a command is not allowed to run in the channel
+     *
+     * @param invoke  the lower cased name that the user typed
+     * @param command the command that the name resolves to, may be null
+     * @return true if the command should not run
+     */
+    public boolean isBlocked(String invoke, Command command) {
+        if (blockAll) {
+            return true;
+        }
+
+        if (requiredCategories == 0 && blockedCategories == 0 && blockedNames.isEmpty()) {
+            return false;
+        }
+
+        int categoryBit = command == null ? 0 : bit(command.getCategory());
+
+        if (requiredCategories != 0 && requiredCategories != categoryBit) {
+            return true;
+        }
+
+        return (blockedCategories & categoryBit) != 0 || blockedNames.contains(invoke);
+    }
+
+    private static int bit(CommandCategory category) {
+        return 1 << category.ordinal();
+    }
+
+    private static CommandCategory getCategory(String name) {
+        try {
+            return CommandCategory.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException ignored) {
+            return null;
+        }
+    }
+}
@@ -164,6 +164,17 @@ public abstract class Command {
     @SuppressWarnings("NullableProblems")
     public abstract void executeCommand(@NotNull String invoke, @NotNull String[] args, @NotNull GuildMessageReceivedEvent event);
 
+    /**
+     * This runs the command from a message that has already been parsed
+     *
+     * @param invocation the parsed message
+     * @param event      a instance of {@link GuildMessageReceivedEvent GuildMessageReceivedEvent}
+     * @see #executeCommand(String, String[], GuildMessageReceivedEvent)
+     */
+    public void executeCommand(@NotNull ParsedInvocation invocation, @NotNull GuildMessageReceivedEvent event) {
+        executeCommand(invocation.getInvoke(), invocation.getArgs(), event);
+    }
+
     /**
      * The usage instructions of the command
      *
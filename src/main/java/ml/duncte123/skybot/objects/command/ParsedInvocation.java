@@ -0,0 +1,203 @@
+/*
+ * Skybot, a multipurpose discord bot
+ *      Copyright (C) 2017 - 2018  Duncan "duncte123" Sterken & Ramid "ramidzkh" Khan & Maurice R S "Sanduhr32"
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ml.duncte123.skybot.objects.command;
+
+import ml.duncte123.skybot.Settings;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This holds a message that has been split up into the prefix, the invoke and the arguments.
+ * <p>
+ * The message only gets parsed once, the arguments are sliced out of the raw content when they are first needed
+ */
+public class ParsedInvocation {
+
+    /**
+     * The kind of prefix that the message started with
+     */
+    public enum PrefixType {
+        /**
+         * {@link Settings#PREFIX}
+         */
+        DEFAULT,
+        /**
+         * {@link Settings#OTHER_PREFIX}
+         */
+        OTHER,
+        /**
+         * The custom prefix that the guild has set
+         */
+        CUSTOM,
+        /**
+         * A mention of the bot
+         */
+        MENTION
+    }
+
+    private static final String[] EMPTY_ARGS = new String[0];
+
+    private final String content;
+    private final PrefixType prefixType;
+    private final int bodyStart;
+    private final int invokeEnd;
+    private final String invoke;
+    private String[] args;
+
+    private ParsedInvocation(String content, PrefixType prefixType, int bodyStart) {
+        this.content = content;
+        this.prefixType = prefixType;
+        this.bodyStart = bodyStart;
+
+        int end = bodyStart;
+        while (end < content.length() && !isSpace(content.charAt(end))) {
+            end++;
+        }
+        this.invokeEnd = end;
+        this.invoke = prefixType == PrefixType.MENTION ? "" : content.substring(bodyStart, end).toLowerCase();
+    }
+
+    /**
+     * This parses a message, the prefixes are checked in the same way that the listener always did
+     *
+     * @param content      the raw content of the message
+     * @param customPrefix the custom prefix of the guild, may be null
+     * @param selfMention  the mention of the bot in this guild, may be null
+     * @return the parsed message or null if the message does not start with one of our prefixes
+     */
+    public static ParsedInvocation parse(String content, String customPrefix, String selfMention) {
+        if (content == null || content.isEmpty()) {
+            return null;
+        }
+
+        if (selfMention != null && content.startsWith(selfMention)) {
+            return new ParsedInvocation(content, PrefixType.MENTION, selfMention.length());
+        }
+
+        if (customPrefix != null && !customPrefix.isEmpty() && content.startsWith(customPrefix)) {
+            return new ParsedInvocation(content, PrefixType.CUSTOM, customPrefix.length());
+        }
+
+        if (content.regionMatches(true, 0, Settings.PREFIX, 0, Settings.PREFIX.length())) {
+            return new ParsedInvocation(content, PrefixType.DEFAULT, Settings.PREFIX.length());
+        }
+
+        if (content.regionMatches(true, 0, Settings.OTHER_PREFIX, 0, Settings.OTHER_PREFIX.length())) {
+            return new ParsedInvocation(content, PrefixType.OTHER, Settings.OTHER_PREFIX.length());
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the raw content of the message
+     *
+     * @return the raw content of the message
+     */
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * Returns the kind of prefix that this message started with
+     *
+     * @return the kind of prefix that this message started with
+     */
+    public PrefixType getPrefixType() {
+        return prefixType;
+    }
+
+    /**
+     * Returns the lower cased command name that the user typed, this is empty for mentions
+     *
+     * @return the lower cased command name that the user typed
+     */
+    public String getInvoke() {
+        return invoke;
+    }
+
+    /**
+     * Returns the arguments after the invoke, for mentions this is everything after the mention
+     *
+     * @return the arguments after the invoke
+     */
+    public String[] getArgs() {
+        String[] current = args;
+
+        if (current == null) {
+            current = sliceArgs(prefixType == PrefixType.MENTION ? bodyStart : invokeEnd);
+            args = current;
+        }
+
+        return current;
+    }
+
+    /**
+     * Returns everything after the invoke without touching the whitespace in between the arguments
+     *
+     * @return everything after the invoke
+     */
+    public String getRawArgs() {
+        int start = prefixType == PrefixType.MENTION ? bodyStart : invokeEnd;
+        while (start < content.length() && isSpace(content.charAt(start))) {
+            start++;
+        }
+
+        return content.substring(start);
+    }
+
+    private String[] sliceArgs(int from) {
+        List<String> out = null;
+        int i = from;
+        final int length = content.length();
+
+        while (i < length) {
+            while (i < length && isSpace(content.charAt(i))) {
+                i++;
+            }
+
+            int start = i;
+            while (i < length && !isSpace(content.charAt(i))) {
+                i++;
+            }
+
+            if (i > start) {
+                if (out == null) {
+                    out = new ArrayList<>();
+                }
+                out.add(content.substring(start, i));
+            }
+        }
+
+        return out == null ? EMPTY_ARGS : out.toArray(new String[0]);
+    }
+
+    /**
+     * The same characters as {@code \s} in a regex
+     */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    @Override
+    public String toString() {
+        return "ParsedInvocation[" + prefixType + ", " + invoke + "]";
+    }
+}
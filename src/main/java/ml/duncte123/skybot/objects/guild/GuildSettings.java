@@ -42,6 +42,8 @@ public class GuildSettings {
     private String muteRoleId = null;
     private long[] ratelimits = new long[]{};
     private boolean kickInstead = false;
+    private String[] swearDenyWords = new String[0];
+    private String[] swearAllowWords = new String[0];
 
     /**
      * This will init everything
@@ -335,6 +337,48 @@ public class GuildSettings {
         return this;
     }
 
+    /**
+     * Returns the words that this guild blocks on top of the normal swear words
+     *
+     * @return the words that this guild blocks
+     */
+    public String[] getSwearDenyWords() {
+        return swearDenyWords;
+    }
+
+    /**
+     * We use this to set the words that this guild blocks on top of the normal swear words,
+     * always pass a new array so the filter sees that the words have changed
+     *
+     * @param swearDenyWords the words to block
+     * @return The current {@link GuildSettings}
+     */
+    public GuildSettings setSwearDenyWords(String[] swearDenyWords) {
+        this.swearDenyWords = swearDenyWords;
+        return this;
+    }
+
+    /**
+     * Returns the words that this guild allows, swear words inside of these words are not blocked
+     *
+     * @return the words that this guild allows
+     */
+    public String[] getSwearAllowWords() {
+        return swearAllowWords;
+    }
+
+    /**
+     * We use this to set the words that this guild allows,
+     * always pass a new array so the filter sees that the words have changed
+     *
+     * @param swearAllowWords the words to allow
+     * @return The current {@link GuildSettings}
+     */
+    public GuildSettings setSwearAllowWords(String[] swearAllowWords) {
+        this.swearAllowWords = swearAllowWords;
+        return this;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -30,7 +30,6 @@ import ml.duncte123.skybot.TempWeebManager;
 import ml.duncte123.skybot.config.Config;
 import ml.duncte123.skybot.connections.database.DBManager;
 import ml.duncte123.skybot.objects.discord.user.Profile;
-import ml.duncte123.skybot.objects.guild.GuildSettings;
 import net.dv8tion.jda.core.OnlineStatus;
 import net.dv8tion.jda.core.entities.Game;
 import net.dv8tion.jda.core.entities.Guild;
@@ -38,10 +37,8 @@ import net.dv8tion.jda.core.entities.TextChannel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.sql.SQLException;
-import java.util.HashMap;
+import java.io.IOException;
 import java.util.List;
-import java.util.Map;
 import java.util.Random;
 import java.util.regex.Pattern;
 
@@ -54,6 +51,10 @@ public class AirUtils {
     public static final boolean NONE_SQLITE = CONFIG.getBoolean("use_database", false);
     public static final Random RAND = new Random();
     public static final DBManager DB = new DBManager();
+    public static final WarningLedger WARNINGS = new WarningLedger();
+    public static final RecentMessages RECENT_MESSAGES = new RecentMessages();
+    public static final ModerationQueue MODERATION = new ModerationQueue();
+    public static final UnbanScheduler UNBANS = new UnbanScheduler();
     public static final WeebApi WEEB_API_old = new WeebApiBuilder(TokenType.WOLKETOKENS, "DuncteBot(SkyBot)/" + Settings.VERSION)
             .setToken(CONFIG.getString("apis.weeb\\.sh.wolketoken", "INSERT_WEEB_WOLKETOKEN"))
             .build();
@@ -66,7 +67,6 @@ public class AirUtils {
             "&hl=en&searchType=image&key=" + CONFIG.getString("apis.googl") + "&safe=off";
     private static final Logger logger = LoggerFactory.getLogger(AirUtils.class);
     public static final WAEngine ALPHA_ENGINE = getWolframEngine();
-    protected static Map<String, GuildSettings> guildSettings = new HashMap<>();
 
     /**
      * This converts the online status of a user to a fancy emote
@@ -216,9 +216,14 @@ public class AirUtils {
      * Stops everything
      */
     public static void stop() {
+        WARNINGS.shutdown();
+        MODERATION.shutdown();
+        UNBANS.shutdown();
+        GuildSettingsUtils.shutdown();
+        DB.getExecutor().shutdown();
         try {
-            DB.getConnManager().getConnection().close();
-        } catch (SQLException e) {
+            DB.getConnManager().close();
+        } catch (IOException e) {
             e.printStackTrace();
         }
         try {
@@ -18,104 +18,236 @@
 
 package ml.duncte123.skybot.utils;
 
+import ml.duncte123.skybot.objects.guild.GuildSettings;
+import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
+import javax.management.ObjectName;
+import java.io.*;
+import java.lang.management.ManagementFactory;
 import java.net.URL;
-import java.util.ArrayList;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
-public class BadWordFilter {
+public class BadWordFilter implements BadWordFilterMBean {
 
-    private int largestWordLength = 0;
-    private Map<String, String[]> words = new HashMap<>();
+    private static final Logger logger = LoggerFactory.getLogger(BadWordFilter.class);
 
-    public BadWordFilter() {
-        try {
-            BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(
-                            new URL("https://docs.google.com/spreadsheets/d/"
-                                    + "1hIEi2YG3ydav1E06Bzf2mQbGZ12kh2fe4ISgLg_UBuM/"
-                                    + "export?format=csv").openConnection().getInputStream()));
-            String line;
-            int counter = 0;
-            while ((line = reader.readLine()) != null) {
-                counter++;
-                String[] content;
-                try {
-                    content = line.split(",");
-                    if (content.length == 0) {
-                        continue;
-                    }
-                    String word = content[0];
-                    String[] ignore_in_combination_with_words = new String[]{};
-                    if (content.length > 1) {
-                        ignore_in_combination_with_words = content[1].split("_");
-                    }
-
-                    if (word.length() > largestWordLength) {
-                        largestWordLength = word.length();
-                    }
-                    words.put(word.replaceAll(" ", ""), ignore_in_combination_with_words);
-
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+    private static final String WORDS_URL = "https://docs.google.com/spreadsheets/d/"
+            + "1hIEi2YG3ydav1E06Bzf2mQbGZ12kh2fe4ISgLg_UBuM/"
+            + "export?format=csv";
+
+    /**
+     * The words from the last download, this gets loaded when the bot starts so we don't have to wait for google
+     */
+    private static final File SNAPSHOT_FILE = new File("badwords.csv");
+
+    /**
+     * How often we download the words again
+     */
+    private static final long REFRESH_HOURS = 6;
+
+    /**
+     * A list with less words than this is a broken download, the real list has a lot more
+     */
+    private static final int MIN_WORDS = 20;
+
+    private volatile BadWordMatcher matcher = BadWordMatcher.EMPTY;
+    /**
+     * The amount of bad words in the matcher, the matcher itself also counts the ignore words
+     */
+    private volatile int wordCount = 0;
+    /**
+     * The compiled words of the guilds that have their own words, the other guilds are not in here
+     */
+    private final Map<String, GuildOverlay> overlays = new ConcurrentHashMap<>();
+    private volatile long lastLoadMillis = 0;
+    private volatile long lastRefresh = 0;
+    private volatile int refreshFailures = 0;
 
+    /**
+     * This loads the words from the snapshot on the disk and downloads them again in the background
+     */
+    public BadWordFilter() {
+        if (SNAPSHOT_FILE.exists()) {
+            try (Reader reader = new InputStreamReader(new FileInputStream(SNAPSHOT_FILE), StandardCharsets.UTF_8)) {
+                loadWords(readAll(reader), MIN_WORDS);
+            } catch (IOException e) {
+                logger.warn("Could not load the bad words from " + SNAPSHOT_FILE, e);
             }
-            LoggerFactory.getLogger(BadWordFilter.class).info("Loaded " + counter + " words to filter out");
+        }
+
+        ScheduledExecutorService refreshService = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "BadWord-Refresh-Thread");
+            t.setDaemon(true);
+            return t;
+        });
+        // get the words right away when we don't have any yet
+        refreshService.scheduleAtFixedRate(this::refresh, wordCount == 0 ? 0 : 1,
+                TimeUnit.HOURS.toMinutes(REFRESH_HOURS), TimeUnit.MINUTES);
+
+        registerMBean();
+    }
+
+    /**
+     * This loads the words from a csv that is already available, this does not touch the network
+     *
+     * @param csv the reader for the csv with the words
+     */
+    public BadWordFilter(Reader csv) {
+        try {
+            loadWords(readAll(csv), 1);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * Iterates over a String input and checks whether a cuss word was found in a list, then checks if the word should be ignored (e.g. bass contains the word *ss).
+     * This downloads the words again and writes them to the snapshot, the old words and the snapshot stay
+     * when this fails or when the download does not look like the word list
+     */
+    public void refresh() {
+        try {
+            URLConnection connection = new URL(WORDS_URL).openConnection();
+            connection.setConnectTimeout(10000);
+            connection.setReadTimeout(30000);
+
+            String csv;
+            try (Reader reader = new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)) {
+                csv = readAll(reader);
+            }
+
+            String type = connection.getContentType();
+            if (type != null && type.contains("html")) {
+                throw new IOException("Got a " + type + " page instead of the words");
+            }
+
+            //Google sometimes gives back a much shorter list while it is having problems
+            Map<String, String[]> words = loadWords(csv, Math.max(MIN_WORDS, wordCount / 2));
+
+            lastRefresh = System.currentTimeMillis();
+            saveSnapshot(words);
+        } catch (Exception e) {
+            refreshFailures++;
+            logger.warn("Could not refresh the bad words, keeping the " + wordCount + " words that we have", e);
+        }
+    }
+
+    private static String readAll(Reader reader) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[8192];
+        int read;
+
+        while ((read = reader.read(buffer)) != -1) {
+            sb.append(buffer, 0, read);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * This reads the words and only swaps them in when there are enough of them
      *
-     * @param in The sentence to check
-     * @return every word as a item in array
+     * @param csv      the csv with the words
+     * @param minWords the least amount of words that we accept
+     * @return the words that are now in use
+     * @throws IOException when the csv does not look like the word list
      */
-    private ArrayList<String> badWordsFound(String in) {
-        if (in == null) {
-            return new ArrayList<>();
+    private Map<String, String[]> loadWords(String csv, int minWords) throws IOException {
+        final long start = System.currentTimeMillis();
+
+        if (csv.trim().startsWith("<")) {
+            throw new IOException("Got a html page instead of the words");
         }
-        String input = in;
-        // remove leetspeak
-        input = input.replaceAll("[1!]", "i");
-        input = input.replaceAll("3", "e");
-        input = input.replaceAll("[4@]", "a");
-        input = input.replaceAll("5", "s");
-        input = input.replaceAll("7", "t");
-        input = input.replaceAll("0", "o");
-        input = input.replaceAll("9", "g");
-
-        ArrayList<String> badWords = new ArrayList<>();
-        input = input.toLowerCase().replaceAll("[^a-zA-Z ]", "");
-
-        // iterate over each letter in the word
-        for (int start = 0; start < input.length(); start++)
-            // from each letter, keep going to find bad words until either the end of the sentence is reached, or the max word length is reached.
-            for (int offset = 1; offset < (input.length() + 1 - start)
-                    && offset < largestWordLength; offset++) {
-                String wordToCheck = input.substring(start, start + offset);
-                if (words.containsKey(wordToCheck)) {
-                    // for example, if you want to say the word bass, that should be possible.
-                    String[] ignoreCheck = words.get(wordToCheck);
-                    boolean ignore = false;
-                    for (String anIgnoreCheck : ignoreCheck)
-                        if (input.contains(anIgnoreCheck)) {
-                            ignore = true;
-                            break;
-                        }
-                    if (!ignore)
-                        badWords.add(wordToCheck);
+
+        final Map<String, String[]> words = new HashMap<>();
+        final BufferedReader reader = new BufferedReader(new StringReader(csv));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] content;
+            try {
+                content = line.split(",");
+                if (content.length == 0) {
+                    continue;
+                }
+                String word = content[0];
+                String[] ignore_in_combination_with_words = new String[]{};
+                if (content.length > 1) {
+                    ignore_in_combination_with_words = content[1].split("_");
                 }
+
+                words.put(word.replaceAll(" ", ""), ignore_in_combination_with_words);
+
+            } catch (Exception e) {
+                e.printStackTrace();
             }
 
-        return badWords;
+        }
+
+        if (words.size() < minWords) {
+            throw new IOException("Only got " + words.size() + " words, expected at least " + minWords);
+        }
+
+        // swap the whole matcher at once so the listeners never see half of the words
+        BadWordMatcher loaded = new BadWordMatcher(words);
+        lastLoadMillis = System.currentTimeMillis() - start;
+        matcher = loaded;
+        wordCount = words.size();
+        logger.info("Loaded " + words.size() + " words to filter out");
+
+        return words;
+    }
+
+    /**
+     * This writes the words to a temp file first and then moves it over the snapshot so it is never half written
+     */
+    private void saveSnapshot(Map<String, String[]> words) {
+        File temp = new File(SNAPSHOT_FILE.getPath() + ".tmp");
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, String[]> entry : words.entrySet()) {
+                // these words are always ignored, a empty ignore word would also get lost in the csv
+                if (Arrays.asList(entry.getValue()).contains("")) {
+                    continue;
+                }
+
+                writer.write(entry.getKey());
+
+                if (entry.getValue().length > 0) {
+                    writer.write(',');
+                    writer.write(String.join("_", entry.getValue()));
+                }
+
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            logger.warn("Could not write the bad words to " + temp, e);
+            return;
+        }
+
+        try {
+            Files.move(temp.toPath(), SNAPSHOT_FILE.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not replace " + SNAPSHOT_FILE, e);
+        }
+    }
+
+    private void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(this, new ObjectName("ml.duncte123.skybot:type=BadWordFilter"));
+        } catch (Exception e) {
+            logger.warn("Could not register the bad word filter with JMX", e);
+        }
     }
 
     /**
@@ -125,7 +257,97 @@ public class BadWordFilter {
      * @return true if it contains a bad word
      */
     public boolean filterText(String input) {
-        ArrayList<String> badWords = badWordsFound(input);
-        return badWords.size() > 0;
+        return matcher.matches(input);
+    }
+
+    /**
+     * Checks if the sentence contains a bad word, this also uses the words that the guild denies and allows
+     *
+     * @param input    the sentence to check
+     * @param settings the settings of the guild that the sentence is from
+     * @return true if it contains a bad word
+     */
+    public boolean filterText(String input, GuildSettings settings) {
+        return matcher.matches(input, getOverlay(settings));
+    }
+
+    /**
+     * This gets the compiled words of a guild, they only get compiled again when the guild has changed its words
+     */
+    private BadWordMatcher getOverlay(GuildSettings settings) {
+        final String[] deny = settings.getSwearDenyWords();
+        final String[] allow = settings.getSwearAllowWords();
+
+        if (deny.length == 0 && allow.length == 0) {
+            if (!overlays.isEmpty()) {
+                overlays.remove(settings.getGuildId());
+            }
+
+            return null;
+        }
+
+        GuildOverlay overlay = overlays.get(settings.getGuildId());
+
+        if (overlay == null || overlay.deny != deny || overlay.allow != allow) {
+            overlay = new GuildOverlay(deny, allow);
+            overlays.put(settings.getGuildId(), overlay);
+        }
+
+        return overlay.matcher;
+    }
+
+    /**
+     * This removes the compiled words of a guild
+     *
+     * @param guildId the id of the guild
+     */
+    public void removeGuild(String guildId) {
+        overlays.remove(guildId);
+    }
+
+    @Override
+    public int getWordCount() {
+        return wordCount;
+    }
+
+    @Override
+    public long getLastLoadMillis() {
+        return lastLoadMillis;
+    }
+
+    @Override
+    public long getLastRefresh() {
+        return lastRefresh;
+    }
+
+    @Override
+    public int getRefreshFailures() {
+        return refreshFailures;
+    }
+
+    @Override
+    public int getGuildOverlayCount() {
+        return overlays.size();
+    }
+
+    /**
+     * The words of one guild, we keep the arrays from the settings to see if they have changed
+     */
+    private static class GuildOverlay {
+        private final String[] deny;
+        private final String[] allow;
+        private final BadWordMatcher matcher;
+
+        private GuildOverlay(String[] deny, String[] allow) {
+            this.deny = deny;
+            this.allow = allow;
+
+            Map<String, String[]> words = new HashMap<>();
+            for (String word : deny) {
+                words.put(word, new String[0]);
+            }
+
+            this.matcher = new BadWordMatcher(words, Arrays.asList(allow));
+        }
     }
 }
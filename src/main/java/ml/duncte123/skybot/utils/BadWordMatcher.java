@@ -0,0 +1,446 @@
+/*
+ * Skybot, a multipurpose discord bot
+ *      Copyright (C) 2017 - 2018  Duncan "duncte123" Sterken & Ramid "ramidzkh" Khan & Maurice R S "Sanduhr32"
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ml.duncte123.skybot.utils;
+
+import java.util.*;
+
+/**
+ * A compiled version of the swear word list, this finds all the words in one pass over the message (Aho-Corasick).
+ * <p>
+ * The leetspeak and the characters that we don't care about are handled while walking over the message
+ * so the message never gets copied. A message without any bad words does not allocate anything.
+ * <p>
+ * A bad word is ignored when one of its ignore words is found around it, for example {@code bass} around {@code ass}.
+ * Guilds can have a small overlay matcher with their own words that runs in the same pass,
+ * see {@link #matches(CharSequence, BadWordMatcher)}
+ */
+public class BadWordMatcher {
+
+    /**
+     * A matcher that does not match anything
+     */
+    public static final BadWordMatcher EMPTY = new BadWordMatcher(Collections.emptyMap());
+
+    /**
+     * The space and the 26 letters
+     */
+    private static final int ALPHABET = 27;
+
+    /**
+     * The class of every ascii character, -1 means that the character is skipped, 0 is a space and 1 - 26 are the letters
+     */
+    private static final byte[] ASCII_CLASSES = new byte[128];
+
+    static {
+        Arrays.fill(ASCII_CLASSES, (byte) -1);
+        ASCII_CLASSES[' '] = 0;
+
+        for (char c = 'a'; c <= 'z'; c++) {
+            ASCII_CLASSES[c] = (byte) (c - 'a' + 1);
+            ASCII_CLASSES[Character.toUpperCase(c)] = (byte) (c - 'a' + 1);
+        }
+
+        // leetspeak
+        ASCII_CLASSES['1'] = ASCII_CLASSES['i'];
+        ASCII_CLASSES['!'] = ASCII_CLASSES['i'];
+        ASCII_CLASSES['3'] = ASCII_CLASSES['e'];
+        ASCII_CLASSES['4'] = ASCII_CLASSES['a'];
+        ASCII_CLASSES['@'] = ASCII_CLASSES['a'];
+        ASCII_CLASSES['5'] = ASCII_CLASSES['s'];
+        ASCII_CLASSES['7'] = ASCII_CLASSES['t'];
+        ASCII_CLASSES['0'] = ASCII_CLASSES['o'];
+        ASCII_CLASSES['9'] = ASCII_CLASSES['g'];
+    }
+
+    private final String[] patterns;
+    private final int[] patternLengths;
+    private final boolean[] badWord;
+    private final boolean[] ignoreWord;
+    /**
+     * Allow words ignore every bad word that they are found around, also the ones from the other matcher
+     */
+    private final boolean[] allowWord;
+    private final boolean hasAllowWords;
+    /**
+     * The ignore words of every bad word, by pattern id
+     */
+    private final int[][] ignoresFor;
+
+    /**
+     * The goto function of the automaton, {@code transitions[state * ALPHABET + class]}
+     */
+    private final int[] transitions;
+    /**
+     * The pattern that ends in a state or -1
+     */
+    private final int[] terminals;
+    /**
+     * The next state on the suffix chain that ends a pattern or 0
+     */
+    private final int[] outputLinks;
+
+    /**
+     * This compiles the words
+     *
+     * @param words the bad words with the words that they should be ignored in
+     */
+    public BadWordMatcher(Map<String, String[]> words) {
+        this(words, Collections.emptyList());
+    }
+
+    /**
+     * This compiles the words together with words that are allowed
+     *
+     * @param words      the bad words with the words that they should be ignored in
+     * @param allowWords the words that bad words are allowed in
+     */
+    public BadWordMatcher(Map<String, String[]> words, Collection<String> allowWords) {
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        List<int[]> ignores = new ArrayList<>();
+        List<Boolean> bad = new ArrayList<>();
+        List<Boolean> ignore = new ArrayList<>();
+
+        for (Map.Entry<String, String[]> entry : words.entrySet()) {
+            String word = normalize(entry.getKey().replace(" ", ""));
+
+            if (word == null || word.isEmpty()) {
+                continue;
+            }
+
+            int[] ignoreIds = new int[entry.getValue().length];
+            int ignoreCount = 0;
+            boolean alwaysIgnored = false;
+
+            for (String ignoreWord : entry.getValue()) {
+                //An empty ignore word is in every message so the word can never be found
+                if (ignoreWord.isEmpty()) {
+                    alwaysIgnored = true;
+                    break;
+                }
+
+                String normalized = normalize(ignoreWord);
+
+                //This can never be in a message after the leetspeak is removed
+                if (normalized == null) {
+                    continue;
+                }
+
+                int id = patternId(normalized, ids, ignores, bad, ignore);
+                ignore.set(id, true);
+                ignoreIds[ignoreCount++] = id;
+            }
+
+            if (alwaysIgnored) {
+                continue;
+            }
+
+            int id = patternId(word, ids, ignores, bad, ignore);
+            bad.set(id, true);
+            ignores.set(id, Arrays.copyOf(ignoreIds, ignoreCount));
+        }
+
+        Set<Integer> allowed = new HashSet<>();
+
+        for (String allowWord : allowWords) {
+            String normalized = normalize(allowWord);
+
+            if (normalized != null && !normalized.isEmpty()) {
+                allowed.add(patternId(normalized, ids, ignores, bad, ignore));
+            }
+        }
+
+        int count = ids.size();
+        this.patterns = ids.keySet().toArray(new String[0]);
+        this.patternLengths = new int[count];
+        this.badWord = new boolean[count];
+        this.ignoreWord = new boolean[count];
+        this.allowWord = new boolean[count];
+        this.hasAllowWords = !allowed.isEmpty();
+        this.ignoresFor = ignores.toArray(new int[0][]);
+
+        int maxStates = 1;
+        for (int i = 0; i < count; i++) {
+            patternLengths[i] = patterns[i].length();
+            badWord[i] = bad.get(i);
+            ignoreWord[i] = ignore.get(i);
+            allowWord[i] = allowed.contains(i);
+            maxStates += patternLengths[i];
+        }
+
+        // build the trie, 0 means that there is no transition yet because nothing goes back to the root
+        int[] trie = new int[maxStates * ALPHABET];
+        int[] trieTerminals = new int[maxStates];
+        Arrays.fill(trieTerminals, -1);
+        int states = 1;
+
+        for (int i = 0; i < count; i++) {
+            int state = 0;
+
+            for (int j = 0; j < patterns[i].length(); j++) {
+                int index = state * ALPHABET + classOf(patterns[i].charAt(j));
+
+                if (trie[index] == 0) {
+                    trie[index] = states++;
+                }
+
+                state = trie[index];
+            }
+
+            trieTerminals[state] = i;
+        }
+
+        this.transitions = Arrays.copyOf(trie, states * ALPHABET);
+        this.terminals = Arrays.copyOf(trieTerminals, states);
+        this.outputLinks = new int[states];
+
+        // turn the trie into the automaton, the states are visited breadth first so the failure of a state is always done
+        int[] failures = new int[states];
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+
+        for (int c = 0; c < ALPHABET; c++) {
+            int next = transitions[c];
+
+            if (next != 0) {
+                queue[tail++] = next;
+            }
+        }
+
+        while (head < tail) {
+            int state = queue[head++];
+            int failure = failures[state];
+            outputLinks[state] = terminals[failure] >= 0 ? failure : outputLinks[failure];
+
+            for (int c = 0; c < ALPHABET; c++) {
+                int index = state * ALPHABET + c;
+                int next = transitions[index];
+
+                if (next == 0) {
+                    transitions[index] = transitions[failure * ALPHABET + c];
+                } else {
+                    failures[next] = transitions[failure * ALPHABET + c];
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    private static int patternId(String pattern, Map<String, Integer> ids, List<int[]> ignores,
+                                 List<Boolean> bad, List<Boolean> ignore) {
+        Integer id = ids.get(pattern);
+
+        if (id == null) {
+            id = ids.size();
+            ids.put(pattern, id);
+            ignores.add(new int[0]);
+            bad.add(false);
+            ignore.add(false);
+        }
+
+        return id;
+    }
+
+    /**
+     * This checks if the text contains a bad word that is not ignored
+     *
+     * @param text the text to check
+     * @return true if the text contains a bad word
+     */
+    public boolean matches(CharSequence text) {
+        return matches(text, null);
+    }
+
+    /**
+     * This checks if the text contains a bad word from this matcher or from the overlay that is not ignored.
+     * Both matchers walk over the text in the same pass, the allow words of one matcher also ignore the words of the other
+     *
+     * @param text    the text to check
+     * @param overlay the words of a guild, may be null
+     * @return true if the text contains a bad word
+     */
+    public boolean matches(CharSequence text, BadWordMatcher overlay) {
+        if (overlay != null && overlay.patterns.length == 0) {
+            overlay = null;
+        }
+
+        if (text == null || (patterns.length == 0 && overlay == null)) {
+            return false;
+        }
+
+        final boolean anyAllowWords = hasAllowWords || (overlay != null && overlay.hasAllowWords);
+        // the ids of the overlay come after our own ids
+        final int offset = patterns.length;
+
+        // these only get created when we find something that can be ignored
+        long[] found = null;
+        int foundCount = 0;
+
+        int state = 0;
+        int overlayState = 0;
+        int position = 0;
+
+        for (int i = 0; i < text.length(); i++) {
+            int c = classOf(text.charAt(i));
+
+            if (c < 0) {
+                continue;
+            }
+
+            position++;
+            state = transitions[state * ALPHABET + c];
+
+            for (int s = terminals[state] >= 0 ? state : outputLinks[state]; s != 0; s = outputLinks[s]) {
+                int pattern = terminals[s];
+
+                if (!anyAllowWords && badWord[pattern] && ignoresFor[pattern].length == 0) {
+                    return true;
+                }
+
+                found = grow(found, foundCount);
+                found[foundCount++] = ((long) pattern << 32) | position;
+            }
+
+            if (overlay == null) {
+                continue;
+            }
+
+            overlayState = overlay.transitions[overlayState * ALPHABET + c];
+
+            for (int s = overlay.terminals[overlayState] >= 0 ? overlayState : overlay.outputLinks[overlayState];
+                 s != 0; s = overlay.outputLinks[s]) {
+                int pattern = overlay.terminals[s];
+
+                if (!anyAllowWords && overlay.badWord[pattern] && overlay.ignoresFor[pattern].length == 0) {
+                    return true;
+                }
+
+                found = grow(found, foundCount);
+                found[foundCount++] = ((long) (pattern + offset) << 32) | position;
+            }
+        }
+
+        for (int i = 0; i < foundCount; i++) {
+            int id = (int) (found[i] >>> 32);
+            boolean bad = id < offset ? badWord[id] : overlay.badWord[id - offset];
+
+            if (bad && !isIgnored(id, (int) found[i], found, foundCount, overlay)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static long[] grow(long[] found, int foundCount) {
+        if (found == null) {
+            return new long[8];
+        }
+
+        return foundCount == found.length ? Arrays.copyOf(found, foundCount * 2) : found;
+    }
+
+    /**
+     * This checks if one of the ignore words of a bad word or a allow word was found around it
+     */
+    private boolean isIgnored(int id, int end, long[] found, int foundCount, BadWordMatcher overlay) {
+        final int offset = patterns.length;
+        final BadWordMatcher owner = id < offset ? this : overlay;
+        final int pattern = id < offset ? id : id - offset;
+        final int start = end - owner.patternLengths[pattern];
+
+        for (int i = 0; i < foundCount; i++) {
+            int otherId = (int) (found[i] >>> 32);
+            int otherEnd = (int) found[i];
+            BadWordMatcher otherOwner = otherId < offset ? this : overlay;
+            int other = otherId < offset ? otherId : otherId - offset;
+
+            if (otherEnd < end || otherEnd - otherOwner.patternLengths[other] > start) {
+                continue;
+            }
+
+            if (otherOwner.allowWord[other]) {
+                return true;
+            }
+
+            if (otherOwner != owner || !owner.ignoreWord[other]) {
+                continue;
+            }
+
+            for (int ignore : owner.ignoresFor[pattern]) {
+                if (ignore == other) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the amount of words and ignore words that are in this matcher
+     *
+     * @return the amount of words and ignore words
+     */
+    public int size() {
+        return patterns.length;
+    }
+
+    private static int classOf(char c) {
+        if (c < 128) {
+            return ASCII_CLASSES[c];
+        }
+
+        char lower = Character.toLowerCase(c);
+        return lower >= 'a' && lower <= 'z' ? lower - 'a' + 1 : -1;
+    }
+
+    /**
+     * This checks if a word can be found in messages, words with other characters than letters, spaces and leetspeak
+     * can never be found
+     *
+     * @param word the word to check
+     * @return true if the word can be found
+     */
+    public static boolean isMatchable(String word) {
+        String normalized = normalize(word);
+        return normalized != null && !normalized.trim().isEmpty();
+    }
+
+    /**
+     * This removes the leetspeak and the characters that we skip from a word
+     *
+     * @return the normalized word or null if the word has characters in it that get removed from messages
+     */
+    private static String normalize(String word) {
+        char[] chars = new char[word.length()];
+
+        for (int i = 0; i < word.length(); i++) {
+            int c = classOf(word.charAt(i));
+
+            if (c < 0) {
+                return null;
+            }
+
+            chars[i] = c == 0 ? ' ' : (char) ('a' + c - 1);
+        }
+
+        return new String(chars);
+    }
+}
@@ -25,16 +25,16 @@ import net.dv8tion.jda.core.entities.MessageEmbed;
 import org.apache.commons.lang3.StringUtils;
 
 import java.time.Instant;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A simple class to help me build embeds
  */
 public class EmbedUtils {
 
-    // Quote, User
-    public static Map<String, String> footerQuotes = new HashMap<>();
+    // Quote, User, the quotes are loaded on the database threads
+    public static Map<String, String> footerQuotes = new ConcurrentHashMap<>();
 
     /**
      * The default way to send a embedded message to the channel with a field in it
@@ -76,14 +76,19 @@ public class EmbedUtils {
         EmbedBuilder eb = new EmbedBuilder()
                 .setColor(Settings.defaultColour);
         if (AirUtils.NONE_SQLITE) {
-            //Get a random index from the quotes
-            int randomIndex = AirUtils.RAND.nextInt(footerQuotes.size());
-            //Get the quote as a string
-            String quote = String.valueOf(footerQuotes.keySet().toArray()[randomIndex]);
-            String user = String.valueOf(footerQuotes.values().toArray()[randomIndex]);
-            String finalQuote = StringUtils.abbreviate(quote, 100) + " - " + user;
-            //Set the quote in the footer
-            eb.setFooter(finalQuote, Settings.DEFAULT_ICON);
+            //Copy the quotes once so the quote and the user always belong together, even when the quotes are being loaded
+            Object[] quotes = footerQuotes.entrySet().toArray();
+
+            if (quotes.length > 0) {
+                //Get a random quote
+                @SuppressWarnings("unchecked")
+                Map.Entry<String, String> entry = (Map.Entry<String, String>) quotes[AirUtils.RAND.nextInt(quotes.length)];
+                String finalQuote = StringUtils.abbreviate(entry.getKey(), 100) + " - " + entry.getValue();
+                //Set the quote in the footer
+                eb.setFooter(finalQuote, Settings.DEFAULT_ICON);
+            } else {
+                eb.setFooter(Settings.DEFAULT_NAME, Settings.DEFAULT_ICON);
+            }
         } else {
             eb.setFooter(Settings.DEFAULT_NAME, Settings.DEFAULT_ICON)
                     .setTimestamp(Instant.now());
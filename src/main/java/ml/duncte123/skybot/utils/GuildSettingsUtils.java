@@ -20,12 +20,18 @@ package ml.duncte123.skybot.utils;
 
 import ml.duncte123.skybot.Settings;
 import ml.duncte123.skybot.objects.guild.GuildSettings;
+import net.dv8tion.jda.core.JDA;
 import net.dv8tion.jda.core.entities.Guild;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.*;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @SuppressWarnings({"SqlDialectInspection", "SqlNoDataSourceInspection"})
@@ -34,17 +40,52 @@ public class GuildSettingsUtils {
     private static final Logger logger = LoggerFactory.getLogger(GuildSettingsUtils.class);
 
     /**
-     * This runs both {@link #loadGuildSettings()} and {@link #loadFooterQuotes()}
+     * The max amount of guilds that we load in one query
+     */
+    private static final int LOAD_BATCH_SIZE = 500;
+
+    /**
+     * The settings of the guilds that we have seen, the settings of a guild are loaded when they are first needed
+     */
+    private static final Map<Long, GuildSettings> guildSettings = new ConcurrentHashMap<>();
+
+    /**
+     * The guilds that are being loaded right now, the other threads that want the same guild wait for these
+     */
+    private static final Map<Long, CompletableFuture<GuildSettings>> loading = new ConcurrentHashMap<>();
+
+    /**
+     * How long we use the defaults after the database could not be reached before we try it again
+     */
+    private static final long RETRY_DELAY = TimeUnit.SECONDS.toMillis(15);
+
+    /**
+     * When loading a guild failed for the last time
+     */
+    private static volatile long failedAt = 0L;
+
+    /**
+     * This saves the changes to the settings in the background
+     */
+    private static final GuildSettingsWriter WRITER = new GuildSettingsWriter(guildSettings::get);
+
+    /**
+     * The newest {@code updated_at} that we have seen, the next sync asks for the rows that changed since then
+     */
+    private static volatile Timestamp lastSync = null;
+
+    /**
+     * This runs both {@link #startSync()} and {@link #loadFooterQuotes()}
      */
     public static void loadAllSettings() {
-        loadGuildSettings();
+        startSync();
         loadFooterQuotes();
     }
 
     /**
      * This will load all the footer quotes from the database and store them in the {@link  EmbedUtils#footerQuotes}
      */
-    private static void loadFooterQuotes() {
+    public static void loadFooterQuotes() {
         if (!AirUtils.NONE_SQLITE) return;
         logger.debug("Loading footer quotes");
 
@@ -75,43 +116,82 @@ public class GuildSettingsUtils {
     }
 
     /**
-     * This will get the settings from our database and store them in the {@link AirUtils#guildSettings settings}
+     * This loads the footer quotes on a database thread
+     *
+     * @return a future that completes when the quotes are loaded
+     * @see #loadFooterQuotes()
      */
-    private static void loadGuildSettings() {
-        logger.debug("Loading Guild settings.");
+    public static CompletableFuture<Void> loadFooterQuotesAsync() {
+        return AirUtils.DB.getExecutor().execute(GuildSettingsUtils::loadFooterQuotes);
+    }
 
-        String dbName = AirUtils.DB.getName();
+    /**
+     * This remembers the newest change that is in the database, the guilds themselves are loaded when they are needed
+     */
+    private static void startSync() {
+        if (!AirUtils.NONE_SQLITE) return;
 
+        String dbName = AirUtils.DB.getName();
         Connection database = AirUtils.DB.getConnManager().getConnection();
+
         try {
-            Statement smt = database.createStatement();
+            ResultSet res = database.createStatement()
+                    .executeQuery("SELECT MAX(updated_at) AS last FROM " + dbName + ".guildSettings");
+            Timestamp last = res.next() ? res.getTimestamp("last") : null;
+            lastSync = last == null ? new Timestamp(0) : last;
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                database.close();
+            } catch (SQLException e2) {
+                e2.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * This gets the rows that changed since the last sync and updates the settings in the cache with them.
+     * The guilds that are not in the cache are skipped, they get the new settings when they are loaded
+     */
+    public static void syncGuildSettings() {
+        if (lastSync == null) {
+            startSync();
+            return;
+        }
+
+        String dbName = AirUtils.DB.getName();
+        Connection database = AirUtils.DB.getConnManager().getConnection();
+        int changed = 0;
+        int updated = 0;
 
-            ResultSet res = smt.executeQuery("SELECT * FROM " + dbName + ".guildSettings");
+        try {
+            //Rows that change in the same second as the last sync are read again, that does not hurt
+            PreparedStatement smt = database.prepareStatement("SELECT * FROM " + dbName + ".guildSettings " +
+                    "WHERE updated_at >= ? ORDER BY updated_at");
+            smt.setTimestamp(1, lastSync);
+            ResultSet res = smt.executeQuery();
+            Timestamp newest = lastSync;
 
             while (res.next()) {
-                String guildId = res.getString("guildId");
-
-                AirUtils.guildSettings.put(guildId, new GuildSettings(guildId)
-                        .setEnableJoinMessage(res.getBoolean("enableJoinMessage"))
-                        .setEnableSwearFilter(res.getBoolean("enableSwearFilter"))
-                        .setCustomJoinMessage(replaceNewLines(res.getString("customWelcomeMessage")))
-                        .setCustomPrefix(res.getString("prefix"))
-                        .setLogChannel(res.getString("logChannelId"))
-                        .setWelcomeLeaveChannel(res.getString("welcomeLeaveChannel"))
-                        .setCustomLeaveMessage(replaceNewLines(res.getString("customLeaveMessage")))
-                        .setAutoroleRole(res.getString("autoRole"))
-                        .setServerDesc(replaceNewLines(res.getString("serverDesc")))
-                        .setAnnounceTracks(res.getBoolean("announceNextTrack"))
-                        .setAutoDeHoist(res.getBoolean("autoDeHoist"))
-                        .setFilterInvites(res.getBoolean("filterInvites"))
-                        .setSpamFilterState(res.getBoolean("spamFilterState"))
-                        .setMuteRoleId(res.getString("muteRoleId"))
-                        .setRatelimits(ratelimmitChecks(res.getString("ratelimits")))
-                        .setKickState(res.getBoolean("kickInsteadState"))
-                );
+                changed++;
+                Timestamp updatedAt = res.getTimestamp("updated_at");
+
+                if (updatedAt != null && updatedAt.after(newest)) {
+                    newest = updatedAt;
+                }
+
+                long guildId = Long.parseLong(res.getString("guildId"));
+                GuildSettings cached = guildSettings.get(guildId);
+
+                //Don't overwrite the changes that we did not write yet
+                if (cached != null && !WRITER.isDirty(guildId)) {
+                    WRITER.remember(readSettings(res, cached));
+                    updated++;
+                }
             }
 
-            logger.debug("Loaded settings for " + AirUtils.guildSettings.keySet().size() + " guilds.");
+            lastSync = newest;
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
@@ -121,79 +201,64 @@ public class GuildSettingsUtils {
                 e2.printStackTrace();
             }
         }
+
+        logger.debug("Synced " + changed + " changed guilds, " + updated + " of them were in the cache.");
     }
 
     /**
-     * This wil get a guild or register it if it's not there yet
+     * This loads the settings of all the guilds of a shard in a few queries,
+     * so the first messages after a restart don't all have to wait for the database
      *
-     * @param guild the guild to get
-     * @return the guild
+     * @param jda the shard to load the guilds for
      */
-    public static GuildSettings getGuild(Guild guild) {
-
-        if (!AirUtils.guildSettings.containsKey(guild.getId())) {
-            return registerNewGuild(guild);
-        }
+    public static void prewarm(JDA jda) {
+        List<Long> ids = jda.getGuildCache().stream()
+                .map(Guild::getIdLong)
+                .filter(id -> !guildSettings.containsKey(id))
+                .collect(Collectors.toList());
 
-        return AirUtils.guildSettings.get(guild.getId());
+        int loaded = loadGuilds(ids);
 
+        logger.debug("Loaded settings for " + loaded + " guilds on shard " + jda.getShardInfo().getShardId() + ".");
     }
 
     /**
-     * This will save the settings into the database when the guild owner/admin updates it
+     * This loads the settings for a list of guilds, the guilds that don't have settings yet are skipped
      *
-     * @param guild    The guild to update it for
-     * @param settings the new settings
+     * @param ids the ids of the guilds
+     * @return the amount of guilds that were loaded
      */
-    public static void updateGuildSettings(Guild guild, GuildSettings settings) {
-        if (!AirUtils.guildSettings.containsKey(settings.getGuildId())) {
-            registerNewGuild(guild);
-            return;
+    private static int loadGuilds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
         }
 
         String dbName = AirUtils.DB.getName();
-        Connection database = AirUtils.DB.getConnManager().getConnection();
+        int loaded = 0;
 
+        Connection database = AirUtils.DB.getConnManager().getConnection();
         try {
-            PreparedStatement smt = database.prepareStatement("UPDATE " + dbName + ".guildSettings SET " +
-                    "enableJoinMessage= ? , " +
-                    "enableSwearFilter= ? ," +
-                    "customWelcomeMessage= ? ," +
-                    "prefix= ? ," +
-                    "autoRole= ? ," +
-                    "logChannelId= ? ," +
-                    "welcomeLeaveChannel= ? ," +
-                    "customLeaveMessage = ? ," +
-                    "serverDesc = ? ," +
-                    "announceNextTrack = ? ," +
-                    "autoDeHoist = ? ," +
-                    "filterInvites = ? ," +
-                    "spamFilterState = ? ," +
-                    "muteRoleId = ? ," +
-                    "ratelimits = ? ," +
-                    "kickInsteadState = ? " +
-                    "WHERE guildId='" + settings.getGuildId() + "'");
-            smt.setBoolean(1, settings.isEnableJoinMessage());
-            smt.setBoolean(2, settings.isEnableSwearFilter());
-            smt.setString(3, replaceUnicode(settings.getCustomJoinMessage()));
-            smt.setString(4, replaceUnicode(settings.getCustomPrefix()));
-            smt.setString(5, settings.getAutoroleRole());
-            smt.setString(6, settings.getLogChannel());
-            smt.setString(7, settings.getWelcomeLeaveChannel());
-            smt.setString(8, replaceUnicode(settings.getCustomLeaveMessage()));
-            smt.setString(9, replaceUnicode(settings.getServerDesc()));
-            smt.setBoolean(10, settings.isAnnounceTracks());
-            smt.setBoolean(11, settings.isAutoDeHoist());
-            smt.setBoolean(12, settings.isFilterInvites());
-            smt.setBoolean(13, settings.getSpamFilterState());
-            smt.setString(14, settings.getMuteRoleId());
-            smt.setString(15, convertJ2S(settings.getRatelimits()));
-            smt.setBoolean(16, settings.getKickState());
-            smt.executeUpdate();
-
-        } catch (SQLException e1) {
-            if (!e1.getLocalizedMessage().toLowerCase().startsWith("incorrect string value"))
-                e1.printStackTrace();
+            for (int i = 0; i < ids.size(); i += LOAD_BATCH_SIZE) {
+                List<Long> batch = ids.subList(i, Math.min(i + LOAD_BATCH_SIZE, ids.size()));
+                String params = batch.stream().map(id -> "?").collect(Collectors.joining(", "));
+                PreparedStatement smt = database.prepareStatement("SELECT * FROM " + dbName + ".guildSettings WHERE guildId IN (" + params + ")");
+
+                for (int j = 0; j < batch.size(); j++) {
+                    smt.setLong(j + 1, batch.get(j));
+                }
+
+                ResultSet res = smt.executeQuery();
+
+                while (res.next()) {
+                    String guildId = res.getString("guildId");
+                    GuildSettings settings = readSettings(res, new GuildSettings(guildId));
+
+                    if (guildSettings.putIfAbsent(Long.parseLong(guildId), settings) == null) {
+                        WRITER.remember(settings);
+                    }
+                    loaded++;
+                }
+            }
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
@@ -203,43 +268,217 @@ public class GuildSettingsUtils {
                 e2.printStackTrace();
             }
         }
+
+        return loaded;
+    }
+
+    /**
+     * This puts the values of a row into settings, the settings can be new or the ones that are already in the cache
+     */
+    private static GuildSettings readSettings(ResultSet res, GuildSettings settings) throws SQLException {
+        return settings
+                .setEnableJoinMessage(res.getBoolean("enableJoinMessage"))
+                .setEnableSwearFilter(res.getBoolean("enableSwearFilter"))
+                .setCustomJoinMessage(replaceNewLines(res.getString("customWelcomeMessage")))
+                .setCustomPrefix(res.getString("prefix"))
+                .setLogChannel(res.getString("logChannelId"))
+                .setWelcomeLeaveChannel(res.getString("welcomeLeaveChannel"))
+                .setCustomLeaveMessage(replaceNewLines(res.getString("customLeaveMessage")))
+                .setAutoroleRole(res.getString("autoRole"))
+                .setServerDesc(replaceNewLines(res.getString("serverDesc")))
+                .setAnnounceTracks(res.getBoolean("announceNextTrack"))
+                .setAutoDeHoist(res.getBoolean("autoDeHoist"))
+                .setFilterInvites(res.getBoolean("filterInvites"))
+                .setSpamFilterState(res.getBoolean("spamFilterState"))
+                .setMuteRoleId(res.getString("muteRoleId"))
+                .setRatelimits(ratelimmitChecks(res.getString("ratelimits")))
+                .setKickState(res.getBoolean("kickInsteadState"))
+                .setSwearDenyWords(convertS2W(res.getString("swearDenyWords")))
+                .setSwearAllowWords(convertS2W(res.getString("swearAllowWords")));
+    }
+
+    /**
+     * This wil get a guild or register it if it's not there yet.
+     * When the settings are not in the cache they are loaded, when more threads ask for the same guild it is only loaded once.
+     * After the database could not be reached we use the defaults for a few seconds before we try again
+     *
+     * @param guild the guild to get
+     * @return the guild
+     */
+    public static GuildSettings getGuild(Guild guild) {
+        GuildSettings settings = guildSettings.get(guild.getIdLong());
+
+        if (settings != null) {
+            return settings;
+        }
+
+        try {
+            settings = load(guild, false).join();
+        } catch (Exception e) {
+            settings = null;
+        }
+
+        //The database is not working, use the defaults until it is back
+        return settings == null ? new GuildSettings(guild.getId()) : settings;
+    }
+
+    /**
+     * This gets the settings of a guild without waiting on the database,
+     * when they are not in the cache yet they are loaded on a database thread
+     *
+     * @param guild the guild to get
+     * @return a future that completes with the settings
+     * @see #getGuild(Guild)
+     */
+    public static CompletableFuture<GuildSettings> getGuildAsync(Guild guild) {
+        GuildSettings settings = guildSettings.get(guild.getIdLong());
+
+        if (settings != null) {
+            return CompletableFuture.completedFuture(settings);
+        }
+
+        return load(guild, true).handle((loaded, error) -> loaded == null ? new GuildSettings(guild.getId()) : loaded);
+    }
+
+    /**
+     * This loads a guild once, when the guild is already being loaded we get the same future
+     *
+     * @param guild the guild to load
+     * @param async true to load it on a database thread, false to load it on this thread
+     * @return a future that completes with the settings or null if the database could not be reached
+     */
+    private static CompletableFuture<GuildSettings> load(Guild guild, boolean async) {
+        //Don't make every message wait for a database that just failed
+        if (System.currentTimeMillis() - failedAt < RETRY_DELAY) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        final long guildId = guild.getIdLong();
+        final CompletableFuture<GuildSettings> future = new CompletableFuture<>();
+        final CompletableFuture<GuildSettings> running = loading.putIfAbsent(guildId, future);
+
+        if (running != null) {
+            return running;
+        }
+
+        if (async) {
+            AirUtils.DB.getExecutor().submit(() -> loadGuild(guild))
+                    .whenComplete((settings, error) -> finishLoading(guildId, future, settings));
+            return future;
+        }
+
+        GuildSettings settings = null;
+
+        try {
+            settings = loadGuild(guild);
+        } finally {
+            finishLoading(guildId, future, settings);
+        }
+
+        return future;
+    }
+
+    private static void finishLoading(long guildId, CompletableFuture<GuildSettings> future, GuildSettings settings) {
+        if (settings == null) {
+            failedAt = System.currentTimeMillis();
+        } else {
+            //The sync or the prewarm may have loaded the guild in the mean time, keep the settings that are already in use
+            GuildSettings cached = guildSettings.putIfAbsent(guildId, settings);
+            settings = cached == null ? settings : cached;
+        }
+
+        loading.remove(guildId, future);
+        future.complete(settings);
+    }
+
+    /**
+     * Returns true if the settings of the guild came from the database,
+     * when this is false {@link #getGuild(Guild)} only has the defaults because the database could not be reached
+     *
+     * @param guild the guild to check
+     * @return true if the settings of the guild came from the database
+     */
+    public static boolean isLoaded(Guild guild) {
+        return guildSettings.containsKey(guild.getIdLong());
+    }
+
+    /**
+     * This will save the settings into the database when the guild owner/admin updates it.
+     * The settings are written in the background by the {@link GuildSettingsWriter}, so this never waits for the database.
+     * <p>
+     * Changes to guilds that are not loaded are dropped, those settings are only the defaults and writing them
+     * would overwrite what is in the database
+     *
+     * @param guild    The guild to update it for
+     * @param settings the new settings
+     * @return true if the settings will be saved
+     */
+    public static boolean updateGuildSettings(Guild guild, GuildSettings settings) {
+        if (guildSettings.computeIfPresent(guild.getIdLong(), (id, old) -> settings) == null) {
+            logger.warn("Not saving the settings of " + guild.getId() + ", they were never loaded from the database");
+            return false;
+        }
+
+        WRITER.markDirty(guild.getIdLong());
+        return true;
+    }
+
+    /**
+     * This writes the changes that are still waiting and stops the writer
+     */
+    public static void shutdown() {
+        WRITER.shutdown();
     }
 
     /**
      * This will register a new guild with their settings on bot join
      *
      * @param g The guild that we are joining
-     * @return The new guild
+     * @return a future that completes with the new guild
      */
-    public static GuildSettings registerNewGuild(Guild g) {
-        if (AirUtils.guildSettings.containsKey(g.getId())) {
-            return AirUtils.guildSettings.get(g.getId());
-        }
-        GuildSettings newGuildSettings = new GuildSettings(g.getId());
+    public static CompletableFuture<GuildSettings> registerNewGuild(Guild g) {
+        return getGuildAsync(g);
+    }
 
+    /**
+     * This loads the settings of a guild from the database, when the guild is not in the database yet it is added
+     *
+     * @param g the guild to load
+     * @return the settings or null if the database could not be reached
+     */
+    private static GuildSettings loadGuild(Guild g) {
         String dbName = AirUtils.DB.getName();
         Connection database = AirUtils.DB.getConnManager().getConnection();
 
         try {
-            ResultSet resultSet = database.createStatement()
-                    .executeQuery("SELECT id FROM " + dbName + ".guildSettings WHERE guildId='" + g.getId() + "'");
-            int rows = 0;
-            while (resultSet.next())
-                rows++;
-
-            if (rows == 0) {
-                PreparedStatement smt = database.prepareStatement("INSERT INTO " + dbName + ".guildSettings(guildId, guildName," +
-                        "customWelcomeMessage, prefix, customLeaveMessage, ratelimits) " +
-                        "VALUES('" + g.getId() + "',  ? , ? , ? , ? , ?)");
-                smt.setString(1, g.getName().replaceAll("\\P{Print}", ""));
-                smt.setString(2, newGuildSettings.getCustomJoinMessage());
-                smt.setString(3, Settings.PREFIX);
-                smt.setString(4, newGuildSettings.getCustomLeaveMessage().replaceAll("\\P{Print}", ""));
-                smt.setString(5, "20|45|60|120|240|2400".replaceAll("\\P{Print}", ""));
-                smt.execute();
+            PreparedStatement select = database.prepareStatement("SELECT * FROM " + dbName + ".guildSettings WHERE guildId = ?");
+            select.setLong(1, g.getIdLong());
+            ResultSet resultSet = select.executeQuery();
+
+            if (resultSet.next()) {
+                GuildSettings settings = readSettings(resultSet, new GuildSettings(g.getId()));
+                WRITER.remember(settings);
+                return settings;
             }
+
+            GuildSettings newGuildSettings = new GuildSettings(g.getId());
+            PreparedStatement smt = database.prepareStatement("INSERT INTO " + dbName + ".guildSettings(guildId, guildName," +
+                    "customWelcomeMessage, prefix, customLeaveMessage, ratelimits) " +
+                    "VALUES(? , ? , ? , ? , ? , ?)");
+            smt.setLong(1, g.getIdLong());
+            smt.setString(2, g.getName().replaceAll("\\P{Print}", ""));
+            smt.setString(3, newGuildSettings.getCustomJoinMessage());
+            smt.setString(4, Settings.PREFIX);
+            smt.setString(5, newGuildSettings.getCustomLeaveMessage().replaceAll("\\P{Print}", ""));
+            smt.setString(6, "20|45|60|120|240|2400".replaceAll("\\P{Print}", ""));
+            smt.execute();
+
+            //The row only has the defaults, the writer writes all the columns the first time
+            WRITER.rememberInserted(g.getIdLong());
+            return newGuildSettings;
         } catch (Exception e) {
             e.printStackTrace();
+            return null;
         } finally {
             if (database != null) {
                 try {
@@ -249,33 +488,38 @@ public class GuildSettingsUtils {
                 }
             }
         }
-        AirUtils.guildSettings.put(g.getId(), newGuildSettings);
-        return newGuildSettings;
     }
 
     /**
-     * This will attempt to remove a guild wen we leave it
+     * This will attempt to remove a guild wen we leave it, the row is deleted on a database thread
      *
      * @param g the guild to remove from the database
+     * @return a future that completes when the guild is removed
      */
-    public static void deleteGuild(Guild g) {
-        AirUtils.guildSettings.remove(g.getId());
+    public static CompletableFuture<Void> deleteGuild(Guild g) {
+        guildSettings.remove(g.getIdLong());
+        WRITER.forget(g.getIdLong());
 
-        String dbName = AirUtils.DB.getName();
-        Connection database = AirUtils.DB.getConnManager().getConnection();
+        final long guildId = g.getIdLong();
+
+        return AirUtils.DB.getExecutor().execute(() -> {
+            String dbName = AirUtils.DB.getName();
+            Connection database = AirUtils.DB.getConnManager().getConnection();
 
-        try {
-            Statement smt = database.createStatement();
-            smt.execute("DELETE FROM " + dbName + ".guildSettings WHERE guildId='" + g.getId() + "'");
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
             try {
-                database.close();
-            } catch (SQLException e2) {
-                e2.printStackTrace();
+                PreparedStatement smt = database.prepareStatement("DELETE FROM " + dbName + ".guildSettings WHERE guildId = ?");
+                smt.setLong(1, guildId);
+                smt.execute();
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                try {
+                    database.close();
+                } catch (SQLException e2) {
+                    e2.printStackTrace();
+                }
             }
-        }
+        });
     }
 
     private static String replaceNewLines(String entery) {
@@ -284,13 +528,13 @@ public class GuildSettingsUtils {
         return entery.replaceAll("\\\\n", "\n");
     }
 
-    private static String replaceUnicode(String entery) {
+    static String replaceUnicode(String entery) {
         if (entery == null || entery.isEmpty())
             return null;
         return entery.replaceAll("\\P{Print}", "");
     }
 
-    private static String convertJ2S(long[] in) {
+    static String convertJ2S(long[] in) {
         return Arrays.stream(in).mapToObj(String::valueOf).collect(Collectors.joining("|", "", ""));
     }
 
@@ -298,6 +542,18 @@ public class GuildSettingsUtils {
         return Arrays.stream(in.split("\\|")).mapToLong(Long::valueOf).toArray();
     }
 
+    static String convertW2S(String[] in) {
+        if (in.length == 0)
+            return null;
+        return String.join("|", in);
+    }
+
+    private static String[] convertS2W(String in) {
+        if (in == null || in.isEmpty())
+            return new String[0];
+        return in.split("\\|");
+    }
+
     public static long[] ratelimmitChecks(String fromDb) {
         if(fromDb == null)
             return new long[] {20, 45, 60, 120, 240, 2400};
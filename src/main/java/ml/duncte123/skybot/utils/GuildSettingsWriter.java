@@ -0,0 +1,322 @@
+/*
+ * Skybot, a multipurpose discord bot
+ *      Copyright (C) 2017 - 2018  Duncan "duncte123" Sterken & Ramid "ramidzkh" Khan & Maurice R S "Sanduhr32"
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ml.duncte123.skybot.utils;
+
+import ml.duncte123.skybot.objects.guild.GuildSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+
+/**
+ * This saves the changes to the guild settings in the background.
+ * <p>
+ * Changing the settings only marks the guild as dirty, every few seconds the dirty guilds are written in one go.
+ * We remember what is in the database for every guild so only the columns that really changed are updated,
+ * and more changes to the same guild before the next write end up in one update.
+ * Guilds that we don't know the row of are never written, the only full rows that we write are the ones that were just inserted
+ */
+@SuppressWarnings({"SqlDialectInspection", "SqlNoDataSourceInspection"})
+public class GuildSettingsWriter {
+
+    /**
+     * The columns that we write, in the same order as {@link #toRow(GuildSettings)}
+     */
+    private static final String[] COLUMNS = {
+            "enableJoinMessage",
+            "enableSwearFilter",
+            "customWelcomeMessage",
+            "prefix",
+            "autoRole",
+            "logChannelId",
+            "welcomeLeaveChannel",
+            "customLeaveMessage",
+            "serverDesc",
+            "announceNextTrack",
+            "autoDeHoist",
+            "filterInvites",
+            "spamFilterState",
+            "muteRoleId",
+            "ratelimits",
+            "kickInsteadState",
+            "swearDenyWords",
+            "swearAllowWords"
+    };
+
+    /**
+     * How long we wait between the writes in seconds
+     */
+    private static final int FLUSH_DELAY = 2;
+
+    /**
+     * The row that we remember for guilds that have all their columns written on the next flush
+     */
+    private static final Object[] FULL_WRITE = new Object[0];
+
+    private static final Logger logger = LoggerFactory.getLogger(GuildSettingsWriter.class);
+
+    private final LongFunction<GuildSettings> lookup;
+    /**
+     * The guilds that have changes, the value goes up on every change so we know if it changed again while we were writing
+     */
+    private final Map<Long, Long> dirty = new ConcurrentHashMap<>();
+    /**
+     * What we think is in the database for every guild
+     */
+    private final Map<Long, Object[]> persisted = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Settings-Writer-Thread");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder written = new LongAdder();
+
+    /**
+     * @param lookup gets the settings of a guild from the cache, returns null when we don't have the guild anymore
+     */
+    public GuildSettingsWriter(LongFunction<GuildSettings> lookup) {
+        this.lookup = lookup;
+        service.scheduleWithFixedDelay(this::flush, FLUSH_DELAY, FLUSH_DELAY, TimeUnit.SECONDS);
+    }
+
+    /**
+     * This remembers what is in the database for a guild, call this when the settings are loaded
+     *
+     * @param settings the settings as they are in the database
+     */
+    public void remember(GuildSettings settings) {
+        persisted.put(Long.parseLong(settings.getGuildId()), toRow(settings));
+    }
+
+    /**
+     * This remembers that the row of a guild was just inserted with the defaults, the next flush writes all the columns
+     *
+     * @param guildId the id of the guild
+     */
+    public void rememberInserted(long guildId) {
+        persisted.put(guildId, FULL_WRITE);
+    }
+
+    /**
+     * This forgets a guild, the changes that are not written yet are dropped
+     *
+     * @param guildId the id of the guild
+     */
+    public void forget(long guildId) {
+        dirty.remove(guildId);
+        persisted.remove(guildId);
+    }
+
+    /**
+     * This marks a guild as changed, it gets written on the next flush
+     *
+     * @param guildId the id of the guild
+     */
+    public void markDirty(long guildId) {
+        if (dirty.merge(guildId, 1L, Long::sum) > 1) {
+            coalesced.increment();
+        }
+    }
+
+    /**
+     * Returns true if the guild has changes that are not in the database yet
+     *
+     * @param guildId the id of the guild
+     * @return true if the guild has changes that are not in the database yet
+     */
+    public boolean isDirty(long guildId) {
+        return dirty.containsKey(guildId);
+    }
+
+    /**
+     * This writes the guilds that have changed, the updates with the same columns go into one batch
+     */
+    public synchronized void flush() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+
+        Map<String, List<Long>> batches = new LinkedHashMap<>();
+        Map<Long, Object[]> rows = new HashMap<>();
+        Map<Long, Object[]> params = new HashMap<>();
+        Map<Long, Long> versions = new HashMap<>(dirty);
+
+        for (long guildId : versions.keySet()) {
+            GuildSettings settings = lookup.apply(guildId);
+
+            if (settings == null) {
+                dirty.remove(guildId, versions.get(guildId));
+                continue;
+            }
+
+            Object[] old = persisted.get(guildId);
+
+            if (old == null) {
+                //We don't know what is in the database, writing the whole row could overwrite it with the defaults
+                logger.warn("Not writing the settings of " + guildId + ", they were never loaded");
+                dirty.remove(guildId, versions.get(guildId));
+                continue;
+            }
+
+            Object[] row = toRow(settings);
+            StringBuilder set = new StringBuilder();
+            List<Object> values = new ArrayList<>();
+
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (old == FULL_WRITE || !Objects.equals(old[i], row[i])) {
+                    set.append(COLUMNS[i]).append(" = ? , ");
+                    values.add(row[i]);
+                }
+            }
+
+            if (values.isEmpty()) {
+                dirty.remove(guildId, versions.get(guildId));
+                continue;
+            }
+
+            values.add(guildId);
+            batches.computeIfAbsent(set.toString(), k -> new ArrayList<>()).add(guildId);
+            rows.put(guildId, row);
+            params.put(guildId, values.toArray());
+        }
+
+        if (batches.isEmpty()) {
+            return;
+        }
+
+        String dbName = AirUtils.DB.getName();
+        Connection database = AirUtils.DB.getConnManager().getConnection();
+
+        try {
+            for (Map.Entry<String, List<Long>> batch : batches.entrySet()) {
+                List<Long> ids = batch.getValue();
+
+                try {
+                    PreparedStatement smt = database.prepareStatement("UPDATE " + dbName + ".guildSettings SET " +
+                            batch.getKey() + "updated_at = CURRENT_TIMESTAMP WHERE guildId = ?");
+
+                    for (long guildId : ids) {
+                        Object[] values = params.get(guildId);
+
+                        for (int i = 0; i < values.length; i++) {
+                            smt.setObject(i + 1, values[i]);
+                        }
+
+                        smt.addBatch();
+                    }
+
+                    smt.executeBatch();
+
+                    for (long guildId : ids) {
+                        persisted.put(guildId, rows.get(guildId));
+                        dirty.remove(guildId, versions.get(guildId));
+                    }
+
+                    written.add(ids.size());
+                } catch (SQLException e) {
+                    if (e.getLocalizedMessage() != null && e.getLocalizedMessage().toLowerCase().startsWith("incorrect string value")) {
+                        //Trying again won't help, write everything the next time the guild changes
+                        for (long guildId : ids) {
+                            persisted.put(guildId, FULL_WRITE);
+                            dirty.remove(guildId, versions.get(guildId));
+                        }
+                    } else {
+                        //The guilds stay dirty so we try again on the next flush
+                        logger.warn("Could not save the settings of " + ids.size() + " guilds", e);
+                    }
+                }
+            }
+        } finally {
+            try {
+                database.close();
+            } catch (SQLException e2) {
+                e2.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * This stops the background writes and writes what is left
+     */
+    public void shutdown() {
+        service.shutdown();
+        flush();
+    }
+
+    /**
+     * Returns the amount of guilds that have changes that are not in the database yet
+     *
+     * @return the amount of guilds that have changes that are not in the database yet
+     */
+    public int getDirtyCount() {
+        return dirty.size();
+    }
+
+    /**
+     * Returns the amount of changes that were put together with an earlier change to the same guild
+     *
+     * @return the amount of changes that were put together with an earlier change
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Returns the amount of rows that have been written
+     *
+     * @return the amount of rows that have been written
+     */
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    private static Object[] toRow(GuildSettings settings) {
+        return new Object[]{
+                settings.isEnableJoinMessage(),
+                settings.isEnableSwearFilter(),
+                GuildSettingsUtils.replaceUnicode(settings.getCustomJoinMessage()),
+                GuildSettingsUtils.replaceUnicode(settings.getCustomPrefix()),
+                settings.getAutoroleRole(),
+                settings.getLogChannel(),
+                settings.getWelcomeLeaveChannel(),
+                GuildSettingsUtils.replaceUnicode(settings.getCustomLeaveMessage()),
+                GuildSettingsUtils.replaceUnicode(settings.getServerDesc()),
+                settings.isAnnounceTracks(),
+                settings.isAutoDeHoist(),
+                settings.isFilterInvites(),
+                settings.getSpamFilterState(),
+                settings.getMuteRoleId(),
+                GuildSettingsUtils.convertJ2S(settings.getRatelimits()),
+                settings.getKickState(),
+                GuildSettingsUtils.convertW2S(settings.getSwearDenyWords()),
+                GuildSettingsUtils.convertW2S(settings.getSwearAllowWords())
+        };
+    }
+}
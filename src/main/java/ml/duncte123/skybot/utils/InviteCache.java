@@ -0,0 +1,164 @@
+/*
+ * Skybot, a multipurpose discord bot
+ *      Copyright (C) 2017 - 2018  Duncan "duncte123" Sterken & Ramid "ramidzkh" Khan & Maurice R S "Sanduhr32"
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ml.duncte123.skybot.utils;
+
+import net.dv8tion.jda.core.JDA;
+import net.dv8tion.jda.core.entities.Invite;
+import net.dv8tion.jda.core.exceptions.ErrorResponseException;
+import net.dv8tion.jda.core.requests.ErrorResponse;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * This remembers which guild an invite code is for so we don't have to ask discord for every message with an invite in it.
+ * <p>
+ * Invites that don't exist are remembered for a shorter time. When a code is already being looked up,
+ * the other messages with that code wait for the same request
+ */
+public class InviteCache {
+
+    /**
+     * The guild id that we use for invites that don't exist or are not for a guild
+     */
+    public static final long UNKNOWN_INVITE = 0L;
+
+    private static final long VALID_TTL = TimeUnit.HOURS.toMillis(1);
+    private static final long UNKNOWN_TTL = TimeUnit.MINUTES.toMillis(5);
+
+    private final Map<String, CachedInvite> invites = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Long>> pending = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+
+    /**
+     * This gets the guild that the invite is for, the callback runs right away when we already know the invite
+     *
+     * @param jda      the jda instance to look the invite up with
+     * @param code     the code of the invite
+     * @param callback gets the id of the guild or {@link #UNKNOWN_INVITE}, this does not run when discord could not be reached
+     */
+    public void resolve(JDA jda, String code, LongConsumer callback) {
+        final CachedInvite cached = invites.get(code);
+
+        if (cached != null && cached.expiresAt > System.currentTimeMillis()) {
+            hits.increment();
+            callback.accept(cached.guildId);
+            return;
+        }
+
+        final CompletableFuture<Long> future = new CompletableFuture<>();
+        final CompletableFuture<Long> running = pending.putIfAbsent(code, future);
+
+        (running == null ? future : running).thenAccept(guildId -> {
+            if (guildId != null) {
+                callback.accept(guildId);
+            }
+        });
+
+        //The future has to be in the map before the request goes out, otherwise a fast response can't remove it again
+        if (running == null) {
+            lookup(jda, code, future);
+        }
+    }
+
+    private void lookup(JDA jda, String code, CompletableFuture<Long> future) {
+        requests.increment();
+
+        try {
+            Invite.resolve(jda, code).queue(
+                    invite -> {
+                        //Group dm invites don't have a guild, those can't take anyone to another server
+                        final Invite.Guild guild = invite.getGuild();
+                        final long guildId = guild == null ? UNKNOWN_INVITE : guild.getIdLong();
+                        invites.put(code, new CachedInvite(guildId, VALID_TTL));
+                        finish(code, future, guildId);
+                    },
+                    error -> {
+                        if (error instanceof ErrorResponseException
+                                && ((ErrorResponseException) error).getErrorResponse() == ErrorResponse.UNKNOWN_INVITE) {
+                            invites.put(code, new CachedInvite(UNKNOWN_INVITE, UNKNOWN_TTL));
+                            finish(code, future, UNKNOWN_INVITE);
+                            return;
+                        }
+
+                        //Something else went wrong, don't remember anything so the next message tries again
+                        finish(code, future, null);
+                    }
+            );
+        } catch (RuntimeException e) {
+            finish(code, future, null);
+        }
+    }
+
+    private void finish(String code, CompletableFuture<Long> future, Long guildId) {
+        pending.remove(code, future);
+        future.complete(guildId);
+    }
+
+    /**
+     * This removes the invites that have expired
+     */
+    public void cleanup() {
+        final long now = System.currentTimeMillis();
+        invites.values().removeIf(invite -> invite.expiresAt <= now);
+    }
+
+    /**
+     * Returns the amount of invites that are cached
+     *
+     * @return the amount of invites that are cached
+     */
+    public int getSize() {
+        return invites.size();
+    }
+
+    /**
+     * Returns how often an invite was found in the cache
+     *
+     * @return how often an invite was found in the cache
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns how often we had to ask discord for an invite
+     *
+     * @return how often we had to ask discord for an invite
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    private static class CachedInvite {
+        private final long guildId;
+        private final long expiresAt;
+
+        private CachedInvite(long guildId, long ttl) {
+            this.guildId = guildId;
+            this.expiresAt = System.currentTimeMillis() + ttl;
+        }
+    }
+}
@@ -0,0 +1,564 @@
+/*
+ * Skybot, a multipurpose discord bot
+ *      Copyright (C) 2017 - 2018  Duncan "duncte123" Sterken & Ramid "ramidzkh" Khan & Maurice R S "Sanduhr32"
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ml.duncte123.skybot.utils;
+
+import net.dv8tion.jda.core.entities.Member;
+import net.dv8tion.jda.core.entities.TextChannel;
+import net.dv8tion.jda.core.requests.RestAction;
+import net.dv8tion.jda.core.utils.MiscUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * This runs the moderation actions (kicks, mutes, deletes and nickname changes) one by one in order of importance,
+ * so a kick is never stuck behind a pile of nickname changes during a raid.
+ * <p>
+ * Every guild only has a few actions with JDA at the same time, so a raid in one guild does not hold up the others.
+ * The rest wait here until one of them is done, actions that JDA never finishes give their place up after a minute.
+ * When the same action is asked for the same member twice while it is waiting it only runs once,
+ * and deletes in the same channel are put together into one bulk delete
+ */
+public class ModerationQueue implements ModerationQueueMBean {
+
+    /**
+     * The kinds of actions, the ones at the top run first
+     */
+    public enum ActionType {
+        KICK,
+        MUTE,
+        DELETE,
+        NICKNAME
+    }
+
+    /**
+     * The max amount of actions that JDA may have at the same time
+     */
+    private static final int MAX_IN_FLIGHT = 25;
+    /**
+     * The max amount of actions that JDA may have at the same time for one guild
+     */
+    private static final int MAX_IN_FLIGHT_PER_GUILD = 5;
+    /**
+     * How long an action may take before we stop waiting for JDA and let the next one go
+     */
+    private static final long IN_FLIGHT_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+    /**
+     * The max amount of messages that discord deletes at once
+     */
+    private static final int BULK_DELETE_SIZE = 100;
+
+    private static final Logger logger = LoggerFactory.getLogger(ModerationQueue.class);
+
+    private final PriorityBlockingQueue<Task> queue = new PriorityBlockingQueue<>();
+    private final Map<String, Task> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger[] backlog = new AtomicInteger[ActionType.values().length];
+    private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+    //The worker holds a permit while it waits for a task, that one is not in flight
+    private volatile boolean waitingForTask = false;
+    private final Map<Long, GuildSlots> guilds = new HashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Thread worker;
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Moderation-Timeout-Thread");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder deduped = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public ModerationQueue() {
+        for (int i = 0; i < backlog.length; i++) {
+            backlog[i] = new AtomicInteger();
+        }
+
+        worker = new Thread(this::run, "Moderation-Thread");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * This adds an action for a member, when there is already an action of the same type waiting for the member
+     * the new one takes its place, the callbacks of both are kept
+     *
+     * @param type    the type of the action
+     * @param member  the member that the action is for
+     * @param action  makes the request when it is time to run it, may return null when there is nothing to do anymore
+     * @param success called when discord has done the action or with null when there was nothing to do, may be null
+     * @param failure called when the action failed, may be null
+     * @param <T>     the type that the request returns
+     */
+    public <T> void submit(ActionType type, Member member, Supplier<RestAction<T>> action, Consumer<T> success, Consumer<Throwable> failure) {
+        if (type == ActionType.DELETE) {
+            throw new IllegalArgumentException("Deletes have to go through delete(TextChannel, long...)");
+        }
+
+        String key = type + ":" + member.getGuild().getIdLong() + ":" + member.getUser().getIdLong();
+        add(key, new SingleTask<>(type, key, member.getGuild().getIdLong(), action, success, failure));
+    }
+
+    /**
+     * @see #submit(ActionType, Member, Supplier, Consumer, Consumer)
+     */
+    public <T> void submit(ActionType type, Member member, Supplier<RestAction<T>> action) {
+        submit(type, member, action, null, null);
+    }
+
+    /**
+     * This deletes messages in a channel, all the messages that are waiting to be deleted in the channel are deleted together
+     *
+     * @param channel    the channel that the messages are in
+     * @param messageIds the ids of the messages
+     */
+    public void delete(TextChannel channel, long... messageIds) {
+        if (messageIds.length == 0) {
+            return;
+        }
+
+        String key = ActionType.DELETE + ":" + channel.getIdLong();
+        add(key, new DeleteTask(key, channel, messageIds));
+    }
+
+    private void add(String key, Task task) {
+        pending.compute(key, (k, waiting) -> {
+            if (waiting != null) {
+                waiting.merge(task);
+                return waiting;
+            }
+
+            backlog[task.type.ordinal()].incrementAndGet();
+            queue.add(task);
+            return task;
+        });
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Task task;
+
+            try {
+                //Wait until JDA has room before we pick a task so the important actions that come in the mean time can still go first
+                inFlight.acquire();
+                waitingForTask = true;
+                task = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                waitingForTask = false;
+            }
+
+            if (!claimSlot(task)) {
+                //The guild is already busy, the task waits for one of its actions to finish and can still be merged into
+                inFlight.release();
+                continue;
+            }
+
+            //After this nothing can be merged into the task anymore
+            pending.remove(task.key, task);
+            backlog[task.type.ordinal()].decrementAndGet();
+
+            long waited = System.nanoTime() - task.queuedAt;
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+
+            Slot slot = new Slot(task);
+
+            try {
+                task.execute(slot);
+            } catch (Throwable thr) {
+                slot.run();
+                failed.increment();
+                logger.error("Error while running a moderation action", thr);
+            }
+        }
+    }
+
+    private boolean claimSlot(Task task) {
+        synchronized (guilds) {
+            GuildSlots slots = guilds.computeIfAbsent(task.guildId, k -> new GuildSlots());
+
+            if (slots.running < MAX_IN_FLIGHT_PER_GUILD) {
+                slots.running++;
+                return true;
+            }
+
+            slots.waiting.add(task);
+            return false;
+        }
+    }
+
+    private void releaseSlot(long guildId) {
+        synchronized (guilds) {
+            GuildSlots slots = guilds.get(guildId);
+            slots.running--;
+
+            Task next = slots.waiting.poll();
+
+            if (next != null) {
+                queue.add(next);
+            } else if (slots.running == 0) {
+                guilds.remove(guildId);
+            }
+        }
+
+        inFlight.release();
+    }
+
+    /**
+     * Stops running the actions, the ones that are still waiting are dropped
+     */
+    public void shutdown() {
+        worker.interrupt();
+        watchdog.shutdownNow();
+    }
+
+    /**
+     * This registers the queue with the platform MBean server so that the backlog can be read over JMX
+     */
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(this, new ObjectName("ml.duncte123.skybot:type=ModerationQueue"));
+        } catch (Exception e) {
+            logger.warn("Could not register the moderation queue with JMX", e);
+        }
+    }
+
+    /**
+     * Returns the amount of actions of a type that are waiting
+     *
+     * @param type the type of the actions
+     * @return the amount of actions of that type that are waiting
+     */
+    public int getBacklog(ActionType type) {
+        return backlog[type.ordinal()].get();
+    }
+
+    @Override
+    public int getBacklog() {
+        return Arrays.stream(backlog).mapToInt(AtomicInteger::get).sum();
+    }
+
+    @Override
+    public int getKickBacklog() {
+        return getBacklog(ActionType.KICK);
+    }
+
+    @Override
+    public int getMuteBacklog() {
+        return getBacklog(ActionType.MUTE);
+    }
+
+    @Override
+    public int getDeleteBacklog() {
+        return getBacklog(ActionType.DELETE);
+    }
+
+    @Override
+    public int getNicknameBacklog() {
+        return getBacklog(ActionType.NICKNAME);
+    }
+
+    @Override
+    public int getInFlight() {
+        int used = MAX_IN_FLIGHT - inFlight.availablePermits() - (waitingForTask ? 1 : 0);
+        return Math.max(used, 0);
+    }
+
+    @Override
+    public long getExecutedCount() {
+        return executed.sum();
+    }
+
+    @Override
+    public long getDedupedCount() {
+        return deduped.sum();
+    }
+
+    @Override
+    public long getCoalescedDeletes() {
+        return coalesced.sum();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    @Override
+    public long getTimedOutCount() {
+        return timedOut.sum();
+    }
+
+    @Override
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000D;
+    }
+
+    /**
+     * The actions that a guild has with JDA and the tasks that wait for one of them to finish
+     */
+    private static class GuildSlots {
+        private final PriorityQueue<Task> waiting = new PriorityQueue<>();
+        private int running;
+    }
+
+    /**
+     * The place of a task with JDA, this is given up once when the task is done or when it takes too long
+     */
+    private class Slot implements Runnable {
+        private final long guildId;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private final ScheduledFuture<?> timeout;
+
+        Slot(Task task) {
+            this.guildId = task.guildId;
+            this.timeout = watchdog.schedule(() -> {
+                if (release()) {
+                    timedOut.increment();
+                    logger.warn("Moderation action " + task.key + " did not finish in time, the next action can go now");
+                }
+            }, IN_FLIGHT_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            if (release()) {
+                timeout.cancel(false);
+            }
+        }
+
+        private boolean release() {
+            if (!released.compareAndSet(false, true)) {
+                return false;
+            }
+
+            releaseSlot(guildId);
+            return true;
+        }
+    }
+
+    private abstract class Task implements Comparable<Task> {
+        final ActionType type;
+        final String key;
+        final long guildId;
+        final long seq = sequence.incrementAndGet();
+        final long queuedAt = System.nanoTime();
+
+        Task(ActionType type, String key, long guildId) {
+            this.type = type;
+            this.key = key;
+            this.guildId = guildId;
+        }
+
+        /**
+         * This takes over a newer task with the same key, it is only called while the task is still waiting
+         */
+        abstract void merge(Task newer);
+
+        /**
+         * This hands the action to JDA, {@code done} has to be called exactly once when all the requests are finished
+         */
+        abstract void execute(Runnable done);
+
+        void finished(Runnable done, boolean ok) {
+            if (ok) {
+                executed.increment();
+            } else {
+                failed.increment();
+            }
+
+            done.run();
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            int byType = Integer.compare(type.ordinal(), other.type.ordinal());
+            return byType != 0 ? byType : Long.compare(seq, other.seq);
+        }
+    }
+
+    private class SingleTask<T> extends Task {
+        private volatile Supplier<RestAction<T>> action;
+        private volatile Consumer<T> success;
+        private volatile Consumer<Throwable> failure;
+
+        SingleTask(ActionType type, String key, long guildId, Supplier<RestAction<T>> action, Consumer<T> success, Consumer<Throwable> failure) {
+            super(type, key, guildId);
+            this.action = action;
+            this.success = success;
+            this.failure = failure;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void merge(Task newer) {
+            SingleTask<T> task = (SingleTask<T>) newer;
+            this.action = task.action;
+            this.success = combine(this.success, task.success);
+            this.failure = combine(this.failure, task.failure);
+            deduped.increment();
+        }
+
+        private <C> Consumer<C> combine(Consumer<C> first, Consumer<C> second) {
+            if (first == null) {
+                return second;
+            }
+
+            return second == null ? first : first.andThen(second);
+        }
+
+        @Override
+        void execute(Runnable done) {
+            RestAction<T> request;
+
+            try {
+                request = action.get();
+            } catch (Exception e) {
+                //Things like missing permissions are thrown before the request is made
+                finished(done, false);
+
+                if (failure != null) {
+                    failure.accept(e);
+                }
+                return;
+            }
+
+            if (request == null) {
+                done.run();
+
+                if (success != null) {
+                    success.accept(null);
+                }
+                return;
+            }
+
+            request.queue(result -> {
+                finished(done, true);
+
+                if (success != null) {
+                    success.accept(result);
+                }
+            }, error -> {
+                finished(done, false);
+
+                if (failure != null) {
+                    failure.accept(error);
+                } else {
+                    logger.debug("Moderation action " + key + " failed", error);
+                }
+            });
+        }
+    }
+
+    private class DeleteTask extends Task {
+        private final TextChannel channel;
+        private final Set<Long> messageIds = new LinkedHashSet<>();
+
+        DeleteTask(String key, TextChannel channel, long[] messageIds) {
+            super(ActionType.DELETE, key, channel.getGuild().getIdLong());
+            this.channel = channel;
+            Arrays.stream(messageIds).forEach(this.messageIds::add);
+        }
+
+        @Override
+        void merge(Task newer) {
+            DeleteTask task = (DeleteTask) newer;
+            synchronized (messageIds) {
+                messageIds.addAll(task.messageIds);
+            }
+            coalesced.increment();
+        }
+
+        @Override
+        void execute(Runnable done) {
+            //Bulk deletes only work for messages that are less than two weeks old
+            OffsetDateTime twoWeeksAgo = OffsetDateTime.now().minusWeeks(2);
+            List<String> bulk = new ArrayList<>();
+            List<Long> single = new ArrayList<>();
+
+            synchronized (messageIds) {
+                for (long id : messageIds) {
+                    if (MiscUtil.getCreationTime(id).isAfter(twoWeeksAgo)) {
+                        bulk.add(Long.toString(id));
+                    } else {
+                        single.add(id);
+                    }
+                }
+            }
+
+            if (bulk.size() == 1) {
+                single.add(Long.parseLong(bulk.remove(0)));
+            }
+
+            List<RestAction<Void>> requests = new ArrayList<>();
+
+            for (int i = 0; i < bulk.size(); i += BULK_DELETE_SIZE) {
+                List<String> chunk = bulk.subList(i, Math.min(i + BULK_DELETE_SIZE, bulk.size()));
+
+                //The last chunk can end up with only one message
+                if (chunk.size() == 1) {
+                    requests.add(channel.deleteMessageById(chunk.get(0)));
+                } else {
+                    requests.add(channel.deleteMessagesByIds(chunk));
+                }
+            }
+
+            for (long id : single) {
+                requests.add(channel.deleteMessageById(id));
+            }
+
+            AtomicInteger remaining = new AtomicInteger(requests.size());
+            AtomicInteger errors = new AtomicInteger();
+            Runnable countDown = () -> {
+                if (remaining.decrementAndGet() == 0) {
+                    finished(done, errors.get() == 0);
+                }
+            };
+
+            if (requests.isEmpty()) {
+                done.run();
+                return;
+            }
+
+            for (RestAction<Void> request : requests) {
+                request.queue(ignored -> countDown.run(), error -> {
+                    errors.incrementAndGet();
+                    logger.debug("Could not delete messages in " + channel, error);
+                    countDown.run();
+                });
+            }
+        }
+    }
+}
@@ -19,9 +19,7 @@
 package ml.duncte123.skybot.utils;
 
 import ml.duncte123.skybot.Settings;
-import ml.duncte123.skybot.objects.ConsoleUser;
-import ml.duncte123.skybot.objects.FakeUser;
-import net.dv8tion.jda.bot.sharding.ShardManager;
+import ml.duncte123.skybot.objects.Ban;
 import net.dv8tion.jda.core.JDA;
 import net.dv8tion.jda.core.Permission;
 import net.dv8tion.jda.core.entities.*;
@@ -29,12 +27,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.HashMap;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 public class ModerationUtils {
@@ -123,7 +124,7 @@ public class ModerationUtils {
     }
 
     /**
-     * Returns the current amount of warnings that a user has
+     * Returns the current amount of warnings that a user has, this comes from the {@link WarningLedger} so it never blocks
      *
      * @param u the {@link User User} to check the warnings for
      * @return The current amount of warnings that a user has
@@ -131,93 +132,87 @@ public class ModerationUtils {
     public static int getWarningCountForUser(User u, Guild g) {
         if (u == null)
             throw new IllegalArgumentException("User to check can not be null");
-        try {
-            return WebUtils.ins.getJSONObject(String.format(
-                    "%s/getWarnsForUser/json?user_id=%s&guild_id=%s",
-                    Settings.API_BASE,
-                    u.getId(),
-                    g.getId())).execute().getJSONArray("warnings").length();
-        } catch (Exception e) {
-            e.printStackTrace();
-            return 0;
-        }
+        return AirUtils.WARNINGS.getCount(g.getIdLong(), u.getIdLong());
     }
 
     /**
-     * This attempts to register a warning in the database
+     * This registers a warning in the {@link WarningLedger}, it gets sent to the api in the background
+     * with the token of the jda instance that was given to {@link WarningLedger#setJDA(JDA)}
      *
      * @param moderator The mod that executed the warning
      * @param target    The user to warn
      * @param reason    the reason for the warn
-     * @param jda       a jda instance because we need the token for auth
+     * @param guild     the guild that the warning is for
      */
-    public static void addWarningToDb(User moderator, User target, String reason, Guild guild, JDA jda) {
-        Map<String, Object> postFields = new HashMap<>();
-        postFields.put("mod_id", moderator.getId());
-        postFields.put("user_id", target.getId());
-        postFields.put("guild_id", guild.getId());
-        postFields.put("reason", reason.isEmpty() ? "No Reason provided" : " for " + reason);
-        postFields.put("token", jda.getToken());
-
-        try {
-            WebUtils.ins.preparePost(
-                    Settings.API_BASE + "/addWarning/json", postFields, WebUtils.EncodingType.APPLICATION_URLENCODED, r -> r).async();
-        } catch (NullPointerException e) {
-            e.printStackTrace();
-        }
+    public static void addWarningToDb(User moderator, User target, String reason, Guild guild) {
+        AirUtils.WARNINGS.addWarning(guild.getIdLong(), target.getIdLong(), moderator.getIdLong(), reason);
     }
 
     /**
-     * This will check if there are users that can be unbanned
+     * This gets the bans that expire before a time from the database on a database thread, the index on the unban date
+     * makes sure that we only read the bans that we need
      *
-     * @param shardManager the current shard manager for this bot
+     * @param time the time in epoch millis
+     * @return a future that completes with the bans, the ones that expire first come first
      */
-    public static void checkUnbans(ShardManager shardManager) {
-        logger.debug("Checking for users to unban");
-        int usersUnbanned = 0;
-        Connection database = AirUtils.DB.getConnManager().getConnection();
+    public static CompletableFuture<List<Ban>> getBansExpiringBeforeAsync(long time) {
+        return AirUtils.DB.getExecutor().submit(() -> {
+            List<Ban> bans = new ArrayList<>();
+            Connection database = AirUtils.DB.getConnManager().getConnection();
 
-        try {
+            try {
+                PreparedStatement smt = database.prepareStatement("SELECT * FROM " + AirUtils.DB.getName() +
+                        ".bans WHERE unban_date <= ? ORDER BY unban_date");
+                smt.setTimestamp(1, new Timestamp(time));
+                ResultSet res = smt.executeQuery();
 
-            Statement smt = database.createStatement();
+                while (res.next()) {
+                    bans.add(new Ban(
+                            res.getInt("id"),
+                            res.getString("userId"),
+                            res.getString("Username"),
+                            res.getString("discriminator"),
+                            res.getString("guildId"),
+                            res.getTimestamp("unban_date").getTime()
+                    ));
+                }
+            } finally {
+                try {
+                    database.close();
+                } catch (SQLException e2) {
+                    e2.printStackTrace();
+                }
+            }
 
-            ResultSet res = smt.executeQuery("SELECT * FROM " + AirUtils.DB.getName() + ".bans");
+            return bans;
+        });
+    }
 
-            while (res.next()) {
-                java.util.Date unbanDate = res.getTimestamp("unban_date");
-                java.util.Date currDate = new java.util.Date();
+    /**
+     * This removes the bans of the member that have expired at the unban date of this ban on a database thread
+     *
+     * @param ban the ban that has expired
+     * @return a future that completes with the amount of bans that were removed
+     */
+    public static CompletableFuture<Integer> removeExpiredBansAsync(Ban ban) {
+        return AirUtils.DB.getExecutor().submit(() -> {
+            Connection database = AirUtils.DB.getConnManager().getConnection();
 
-                if (currDate.after(unbanDate)) {
-                    usersUnbanned++;
-                    String username = res.getString("Username");
-                    logger.debug("Unbanning " + username);
-                    try {
-                        String guildid = res.getString("guildId");
-                        String userID = res.getString("userId");
-                        shardManager.getGuildCache().getElementById(guildid).getController()
-                                .unban(userID).reason("Ban expired").queue();
-                        modLog(new ConsoleUser(),
-                                new FakeUser(username,
-                                        userID,
-                                        res.getString("discriminator")),
-                                "unbanned",
-                                shardManager.getGuildById(guildid)
-                        );
-                    } catch (NullPointerException ignored) {
-                    }
-                    database.createStatement().executeUpdate("DELETE FROM " + AirUtils.DB.getName() + ".bans WHERE id=" + res.getInt("id") + "");
-                }
-            }
-            logger.debug("Checking done, unbanned " + usersUnbanned + " users.");
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
             try {
-                database.close();
-            } catch (SQLException e2) {
-                e2.printStackTrace();
+                PreparedStatement smt = database.prepareStatement("DELETE FROM " + AirUtils.DB.getName() +
+                        ".bans WHERE guildId = ? AND userId = ? AND unban_date <= ?");
+                smt.setLong(1, Long.parseLong(ban.getGuildId()));
+                smt.setLong(2, Long.parseLong(ban.getUserId()));
+                smt.setTimestamp(3, new Timestamp(ban.getUnbanDate()));
+                return smt.executeUpdate();
+            } finally {
+                try {
+                    database.close();
+                } catch (SQLException e2) {
+                    e2.printStackTrace();
+                }
             }
-        }
+        });
     }
 
     public static void muteUser(JDA jda, Guild guild, Member member, TextChannel channel, String cause, long minutesUntilUnMute) {
@@ -239,20 +234,21 @@ public class ModerationUtils {
             return;
         }
         String reason = String.format("The member %#s was muted for %s until %d", member.getUser(), cause, minutesUntilUnMute);
-        guild.getController().addSingleRoleToMember(member, muteRole).reason(reason).queue(
-        (success) -> {
-            guild.getController().removeSingleRoleFromMember(member, muteRole).reason("Scheduled un-mute").queueAfter(minutesUntilUnMute, TimeUnit.MINUTES);
-        },
-        (failure) -> {
-            String chan = GuildSettingsUtils.getGuild(guild).getLogChannel();
-            if(chan != null && !chan.isEmpty()) {
-                TextChannel logChannel = AirUtils.getLogChannel(chan, guild);
+        AirUtils.MODERATION.submit(ModerationQueue.ActionType.MUTE, member,
+                () -> guild.getController().addSingleRoleToMember(member, muteRole).reason(reason),
+                (success) -> {
+                    guild.getController().removeSingleRoleFromMember(member, muteRole).reason("Scheduled un-mute").queueAfter(minutesUntilUnMute, TimeUnit.MINUTES);
+                },
+                (failure) -> {
+                    String chan = GuildSettingsUtils.getGuild(guild).getLogChannel();
+                    if(chan != null && !chan.isEmpty()) {
+                        TextChannel logChannel = AirUtils.getLogChannel(chan, guild);
 
-                String message = String.format("%#s bypassed the mute.", member.getUser());
+                        String message = String.format("%#s bypassed the mute.", member.getUser());
 
-                MessageUtils.sendEmbed(logChannel, EmbedUtils.defaultEmbed().setDescription(message).build());
-            }
-        });
+                        MessageUtils.sendEmbed(logChannel, EmbedUtils.defaultEmbed().setDescription(message).build());
+                    }
+                });
     }
 
     public static void kickUser(Guild guild, Member member, TextChannel channel, String cause) {
@@ -268,6 +264,7 @@ public class ModerationUtils {
             return;
         }
         String reason = String.format("The member %#s was kicked for %s.", member.getUser(), cause);
-        guild.getController().kick(member).reason(reason).queue();
+        AirUtils.MODERATION.submit(ModerationQueue.ActionType.KICK, member,
+                () -> guild.getController().kick(member).reason(reason));
     }
 }
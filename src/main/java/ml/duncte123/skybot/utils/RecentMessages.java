@@ -0,0 +1,175 @@
+/*
+ * Skybot, a multipurpose discord bot
+ *      Copyright (C) 2017 - 2018  Duncan "duncte123" Sterken & Ramid "ramidzkh" Khan & Maurice R S "Sanduhr32"
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ml.duncte123.skybot.utils;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This remembers the last messages of the channels that are active, so we can delete them without asking discord for the history.
+ * <p>
+ * Every channel gets a ring with the ids of the last {@link #CAPACITY} messages and their authors in two {@code long} arrays.
+ * Channels that have been quiet for a while are removed by {@link #evictIdle()}
+ */
+public class RecentMessages {
+
+    /**
+     * The max amount of messages that we keep per channel, this is also the max amount that discord can delete at once
+     */
+    public static final int CAPACITY = 100;
+
+    private static final long IDLE_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    private static final long[] EMPTY = new long[0];
+
+    private final Map<Long, ChannelRing> channels = new ConcurrentHashMap<>();
+
+    /**
+     * This adds a message to the ring of the channel
+     *
+     * @param channelId the id of the channel
+     * @param messageId the id of the message
+     * @param authorId  the id of the author of the message
+     */
+    public void add(long channelId, long messageId, long authorId) {
+        channels.computeIfAbsent(channelId, k -> new ChannelRing()).add(messageId, authorId);
+    }
+
+    /**
+     * This removes a message that got deleted
+     *
+     * @param channelId the id of the channel
+     * @param messageId the id of the message
+     */
+    public void remove(long channelId, long messageId) {
+        ChannelRing ring = channels.get(channelId);
+
+        if (ring != null) {
+            ring.remove(messageId);
+        }
+    }
+
+    /**
+     * This forgets everything about a channel
+     *
+     * @param channelId the id of the channel
+     */
+    public void removeChannel(long channelId) {
+        channels.remove(channelId);
+    }
+
+    /**
+     * This gets the ids of the last messages in a channel
+     *
+     * @param channelId the id of the channel
+     * @param amount    the amount of messages
+     * @return the ids of the messages, the newest first or null if we don't know that many messages in the channel
+     */
+    public long[] getLatest(long channelId, int amount) {
+        ChannelRing ring = channels.get(channelId);
+
+        if (ring == null) {
+            return null;
+        }
+
+        long[] ids = ring.getLatest(amount, 0, false);
+        return ids.length < amount ? null : ids;
+    }
+
+    /**
+     * This gets the ids of the last messages of an author in a channel
+     *
+     * @param channelId the id of the channel
+     * @param authorId  the id of the author
+     * @param amount    the max amount of messages
+     * @return the ids of the messages that we know, the newest first
+     */
+    public long[] getLatestFrom(long channelId, long authorId, int amount) {
+        ChannelRing ring = channels.get(channelId);
+        return ring == null ? EMPTY : ring.getLatest(amount, authorId, true);
+    }
+
+    /**
+     * This removes the channels that have not had a message for a while
+     */
+    public void evictIdle() {
+        final long now = System.currentTimeMillis();
+        channels.values().removeIf(ring -> now - ring.lastMessage > IDLE_MILLIS);
+    }
+
+    /**
+     * Returns the amount of channels that we keep messages for
+     *
+     * @return the amount of channels that we keep messages for
+     */
+    public int getChannelCount() {
+        return channels.size();
+    }
+
+    private static class ChannelRing {
+        private final long[] messageIds = new long[CAPACITY];
+        private final long[] authorIds = new long[CAPACITY];
+        private int head = 0;
+        private int size = 0;
+        private volatile long lastMessage = System.currentTimeMillis();
+
+        private synchronized void add(long messageId, long authorId) {
+            messageIds[head] = messageId;
+            authorIds[head] = authorId;
+            head = (head + 1) % CAPACITY;
+
+            if (size < CAPACITY) {
+                size++;
+            }
+
+            lastMessage = System.currentTimeMillis();
+        }
+
+        /**
+         * Deleted messages get an id of 0 so they are skipped, they fall out of the ring like the others
+         */
+        private synchronized void remove(long messageId) {
+            for (int i = 0; i < CAPACITY; i++) {
+                if (messageIds[i] == messageId) {
+                    messageIds[i] = 0;
+                    return;
+                }
+            }
+        }
+
+        private synchronized long[] getLatest(int amount, long authorId, boolean filterAuthor) {
+            long[] out = new long[Math.min(amount, size)];
+            int found = 0;
+            int i = head;
+
+            for (int checked = 0; checked < size && found < out.length; checked++) {
+                i = i == 0 ? CAPACITY - 1 : i - 1;
+
+                if (messageIds[i] == 0 || (filterAuthor && authorIds[i] != authorId)) {
+                    continue;
+                }
+
+                out[found++] = messageIds[i];
+            }
+
+            return found == out.length ? out : Arrays.copyOf(out, found);
+        }
+    }
+}
@@ -25,13 +25,14 @@ import org.slf4j.LoggerFactory;
 
 import java.sql.*;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 public class TagUtils {
     /**
-     * This stores all the tags
+     * This stores all the tags, it is changed from the database threads so it has to be concurrent
      */
-    public static Map<String, Tag> tagsList = new TreeMap<>();
+    public static Map<String, Tag> tagsList = new ConcurrentSkipListMap<>();
     private static Logger logger = LoggerFactory.getLogger(TagUtils.class);
 
     /**
@@ -70,6 +71,16 @@ public class TagUtils {
         }
     }
 
+    /**
+     * This loads the tags on a database thread
+     *
+     * @return a future that completes when the tags are loaded
+     * @see #loadAllTags()
+     */
+    public static CompletableFuture<Void> loadAllTagsAsync() {
+        return AirUtils.DB.getExecutor().execute(TagUtils::loadAllTags);
+    }
+
     /**
      * Attempts to register a new tag
      *
@@ -106,6 +117,18 @@ public class TagUtils {
         return true;
     }
 
+    /**
+     * This registers a new tag on a database thread
+     *
+     * @param author The user that created the tag
+     * @param tag    the {@link Tag} to add
+     * @return a future that completes with true if the tag is added
+     * @see #registerNewTag(User, Tag)
+     */
+    public static CompletableFuture<Boolean> registerNewTagAsync(User author, Tag tag) {
+        return AirUtils.DB.getExecutor().submit(() -> registerNewTag(author, tag));
+    }
+
     /**
      * Attempts to delete a tag
      *
@@ -133,4 +156,15 @@ public class TagUtils {
         }
         return false;
     }
+
+    /**
+     * This deletes a tag on a database thread
+     *
+     * @param tag the {@link Tag} to delete
+     * @return a future that completes with true if the tag is deleted
+     * @see #deleteTag(Tag)
+     */
+    public static CompletableFuture<Boolean> deleteTagAsync(Tag tag) {
+        return AirUtils.DB.getExecutor().submit(() -> deleteTag(tag));
+    }
 }
@@ -0,0 +1,213 @@
+/*
+ * Skybot, a multipurpose discord bot
+ *      Copyright (C) 2017 - 2018  Duncan "duncte123" Sterken & Ramid "ramidzkh" Khan & Maurice R S "Sanduhr32"
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ml.duncte123.skybot.utils;
+
+import ml.duncte123.skybot.objects.Ban;
+import ml.duncte123.skybot.objects.ConsoleUser;
+import ml.duncte123.skybot.objects.FakeUser;
+import net.dv8tion.jda.bot.sharding.ShardManager;
+import net.dv8tion.jda.core.JDA;
+import net.dv8tion.jda.core.entities.Guild;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This unbans the members at the moment that their ban expires.
+ * <p>
+ * Only the bans that expire in the next {@link #WINDOW} are kept in memory, every half window we ask the database
+ * for the bans that expire before the end of the next window.
+ * The bans wait in the queue of a scheduled executor until their time is there.
+ * When a member has more than one ban waiting we only keep the one that expires first, just like the old timer did.
+ * <p>
+ * When we can't see the guild because its shard is not connected the ban stays in the database and is tried again on the next load
+ */
+public class UnbanScheduler {
+
+    /**
+     * How far ahead we load the bans
+     */
+    private static final long WINDOW = TimeUnit.HOURS.toMillis(1);
+
+    private static final Logger logger = LoggerFactory.getLogger(UnbanScheduler.class);
+
+    private final Map<String, Scheduled> scheduled = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor timer;
+    private volatile ShardManager shardManager;
+
+    public UnbanScheduler() {
+        timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "Unban-Thread");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * This starts loading the bans from the database, call this once when all the shards are connected
+     * so the bans that expired while we were offline can be unbanned right away
+     *
+     * @param shardManager the shard manager that we use to unban the members
+     * @see #isReady(ShardManager)
+     */
+    public synchronized void start(ShardManager shardManager) {
+        //The last shards can be ready at the same time
+        if (this.shardManager != null) {
+            return;
+        }
+
+        this.shardManager = shardManager;
+        timer.scheduleAtFixedRate(this::load, 0, WINDOW / 2, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns true if all the shards are connected, before that we can't tell if a guild is gone or just not loaded yet
+     *
+     * @param shardManager the shard manager to check
+     * @return true if all the shards are connected
+     */
+    public static boolean isReady(ShardManager shardManager) {
+        return shardManager.getShards().stream().filter(shard -> shard.getStatus() == JDA.Status.CONNECTED).count()
+                == shardManager.getShardsTotal();
+    }
+
+    /**
+     * This adds a ban that was just made, bans that expire after the window are loaded from the database later
+     *
+     * @param ban the ban to add
+     */
+    public void add(Ban ban) {
+        if (shardManager == null || ban.getUnbanDate() - System.currentTimeMillis() > WINDOW) {
+            return;
+        }
+
+        schedule(ban);
+    }
+
+    /**
+     * Returns the amount of bans that are waiting
+     *
+     * @return the amount of bans that are waiting
+     */
+    public int size() {
+        return scheduled.size();
+    }
+
+    /**
+     * Stops the timer, the bans that are waiting stay in the database
+     */
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    private void load() {
+        ModerationUtils.getBansExpiringBeforeAsync(System.currentTimeMillis() + WINDOW).whenComplete((bans, error) -> {
+            if (error != null) {
+                logger.error("Could not load the bans that expire soon", error);
+                return;
+            }
+
+            for (Ban ban : bans) {
+                schedule(ban);
+            }
+
+            logger.debug("Loaded " + bans.size() + " bans that expire soon, " + scheduled.size() + " are waiting");
+        });
+    }
+
+    private void schedule(Ban ban) {
+        String key = ban.getGuildId() + ":" + ban.getUserId();
+
+        scheduled.compute(key, (k, current) -> {
+            if (current != null) {
+                if (current.ban.getUnbanDate() <= ban.getUnbanDate()) {
+                    return current;
+                }
+
+                current.future.cancel(false);
+            }
+
+            Scheduled entry = new Scheduled(ban);
+            long delay = Math.max(0, ban.getUnbanDate() - System.currentTimeMillis());
+            entry.future = timer.schedule(() -> unban(k, entry), delay, TimeUnit.MILLISECONDS);
+            return entry;
+        });
+    }
+
+    private void unban(String key, Scheduled entry) {
+        //Another ban took its place
+        if (!scheduled.remove(key, entry)) {
+            return;
+        }
+
+        Ban ban = entry.ban;
+        logger.debug("Unbanning " + ban.getUserName());
+        Guild guild = shardManager.getGuildById(ban.getGuildId());
+
+        if (guild == null && !isGone(Long.parseLong(ban.getGuildId()))) {
+            //The shard of the guild is not connected, the next load picks the ban up again
+            logger.debug("Can't see the guild of " + ban + " right now, trying again later");
+            return;
+        }
+
+        if (guild != null) {
+            guild.getController().unban(ban.getUserId()).reason("Ban expired").queue(null, error -> {
+                //The ban is already gone
+            });
+            ModerationUtils.modLog(new ConsoleUser(),
+                    new FakeUser(ban.getUserName(),
+                            ban.getUserId(),
+                            ban.getDiscriminator()),
+                    "unbanned",
+                    guild
+            );
+        }
+
+        ModerationUtils.removeExpiredBansAsync(ban).whenComplete((removed, error) -> {
+            if (error != null) {
+                logger.error("Could not remove the expired ban " + ban, error);
+            }
+        });
+    }
+
+    /**
+     * @return true if the shard of the guild is connected and does not have the guild, so we are not in it anymore
+     */
+    private boolean isGone(long guildId) {
+        int shardId = (int) ((guildId >>> 22) % shardManager.getShardsTotal());
+        JDA shard = shardManager.getShardById(shardId);
+
+        return shard != null && shard.getStatus() == JDA.Status.CONNECTED && !shard.isUnavailable(guildId);
+    }
+
+    private static class Scheduled {
+        private final Ban ban;
+        private ScheduledFuture<?> future;
+
+        private Scheduled(Ban ban) {
+            this.ban = ban;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Skybot, a multipurpose discord bot
+ *      Copyright (C) 2017 - 2018  Duncan "duncte123" Sterken & Ramid "ramidzkh" Khan & Maurice R S "Sanduhr32"
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ml.duncte123.skybot.utils;
+
+import ml.duncte123.skybot.Settings;
+import net.dv8tion.jda.core.JDA;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This keeps the warnings in our own database and the amount of warnings per member in memory,
+ * so the spam filter and the warn command don't have to wait for the api.
+ * <p>
+ * New warnings are sent to the api in the background, when the api is down they are sent on the next try
+ */
+@SuppressWarnings({"SqlDialectInspection", "SqlNoDataSourceInspection"})
+public class WarningLedger {
+
+    private static final Logger logger = LoggerFactory.getLogger(WarningLedger.class);
+
+    /**
+     * The max amount of warnings that we send to the api in one go
+     */
+    private static final int SYNC_BATCH_SIZE = 100;
+
+    private final Map<Long, Map<Long, AtomicInteger>> counts = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Warning-Thread");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile JDA jda;
+
+    /**
+     * This loads the amount of warnings from the database and starts sending the new warnings to the api
+     */
+    public void start() {
+        loadCounts();
+        service.scheduleWithFixedDelay(this::syncWarnings, 30, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Sets the jda instance that we get the token from, the warnings are not sent to the api before this is set
+     *
+     * @param jda a jda instance because we need the token for auth
+     */
+    public void setJDA(JDA jda) {
+        this.jda = jda;
+    }
+
+    /**
+     * Returns the amount of warnings that a member has, this never waits for the database or the api.
+     * The first time that we see a member we also ask the api for the warnings in the background
+     *
+     * @param guildId the id of the guild
+     * @param userId  the id of the user
+     * @return the amount of warnings that the member has
+     */
+    public int getCount(long guildId, long userId) {
+        return getCounter(guildId, userId).get();
+    }
+
+    /**
+     * This adds a warning, the count goes up right away and the warning gets written to the database in the background
+     *
+     * @param guildId the id of the guild
+     * @param userId  the id of the user that gets the warning
+     * @param modId   the id of the mod that gave the warning
+     * @param reason  the reason for the warning
+     * @return the new amount of warnings that the member has
+     */
+    public int addWarning(long guildId, long userId, long modId, String reason) {
+        int count = getCounter(guildId, userId).incrementAndGet();
+        service.execute(() -> insertWarning(guildId, userId, modId, reason));
+        return count;
+    }
+
+    private AtomicInteger getCounter(long guildId, long userId) {
+        Map<Long, AtomicInteger> guild = counts.computeIfAbsent(guildId, k -> new ConcurrentHashMap<>());
+        AtomicInteger counter = guild.get(userId);
+
+        if (counter != null) {
+            return counter;
+        }
+
+        AtomicInteger created = new AtomicInteger();
+        counter = guild.putIfAbsent(userId, created);
+
+        if (counter != null) {
+            return counter;
+        }
+
+        // the api might know about warnings that we don't have ourselves
+        service.execute(() -> loadRemoteCount(guildId, userId, created));
+        return created;
+    }
+
+    private void loadRemoteCount(long guildId, long userId, AtomicInteger counter) {
+        try {
+            int remote = WebUtils.ins.getJSONObject(String.format(
+                    "%s/getWarnsForUser/json?user_id=%s&guild_id=%s",
+                    Settings.API_BASE,
+                    userId,
+                    guildId)).execute().getJSONArray("warnings").length();
+
+            counter.accumulateAndGet(remote, Math::max);
+        } catch (Exception e) {
+            logger.debug("Could not get the warnings from the api", e);
+        }
+    }
+
+    private void loadCounts() {
+        Connection database = AirUtils.DB.getConnManager().getConnection();
+
+        try {
+            ResultSet res = database.createStatement().executeQuery("SELECT guildId, userId, COUNT(*) AS warnings FROM "
+                    + AirUtils.DB.getName() + ".warnings GROUP BY guildId, userId");
+
+            int loaded = 0;
+            while (res.next()) {
+                counts.computeIfAbsent(Long.parseLong(res.getString("guildId")), k -> new ConcurrentHashMap<>())
+                        .put(Long.parseLong(res.getString("userId")), new AtomicInteger(res.getInt("warnings")));
+                loaded++;
+            }
+
+            logger.debug("Loaded the warnings for " + loaded + " members");
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                database.close();
+            } catch (SQLException e2) {
+                e2.printStackTrace();
+            }
+        }
+    }
+
+    private void insertWarning(long guildId, long userId, long modId, String reason) {
+        Connection database = AirUtils.DB.getConnManager().getConnection();
+
+        try {
+            PreparedStatement smt = database.prepareStatement("INSERT INTO " + AirUtils.DB.getName() +
+                    ".warnings(guildId, userId, modId, reason) VALUES(? , ? , ? , ?)");
+            smt.setLong(1, guildId);
+            smt.setLong(2, userId);
+            smt.setLong(3, modId);
+            smt.setString(4, reason);
+            smt.execute();
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                database.close();
+            } catch (SQLException e2) {
+                e2.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * This sends the warnings that the api does not have yet, we stop at the first one that fails and try again later
+     */
+    private void syncWarnings() {
+        final JDA jda = this.jda;
+
+        if (jda == null) {
+            return;
+        }
+
+        Connection database = AirUtils.DB.getConnManager().getConnection();
+
+        try {
+            ResultSet res = database.createStatement().executeQuery("SELECT * FROM " + AirUtils.DB.getName() +
+                    ".warnings WHERE synced = 0 ORDER BY id LIMIT " + SYNC_BATCH_SIZE);
+            PreparedStatement markSynced = database.prepareStatement("UPDATE " + AirUtils.DB.getName() +
+                    ".warnings SET synced = 1 WHERE id = ?");
+
+            while (res.next()) {
+                String reason = res.getString("reason");
+                Map<String, Object> postFields = new HashMap<>();
+                postFields.put("mod_id", res.getString("modId"));
+                postFields.put("user_id", res.getString("userId"));
+                postFields.put("guild_id", res.getString("guildId"));
+                postFields.put("reason", reason == null || reason.isEmpty() ? "No Reason provided" : " for " + reason);
+                postFields.put("token", jda.getToken());
+
+                String response = WebUtils.ins.preparePost(Settings.API_BASE + "/addWarning/json", postFields,
+                        WebUtils.EncodingType.APPLICATION_JSON).execute();
+
+                //Only mark the warning when the api took it, otherwise we send it again next time
+                if (response == null || "failure".equalsIgnoreCase(new JSONObject(response).optString("status"))) {
+                    logger.debug("The api did not take the warnings, trying again later: " + response);
+                    return;
+                }
+
+                markSynced.setInt(1, res.getInt("id"));
+                markSynced.executeUpdate();
+            }
+        } catch (Exception e) {
+            logger.debug("Could not send the warnings to the api, trying again later", e);
+        } finally {
+            try {
+                database.close();
+            } catch (SQLException e2) {
+                e2.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Stops sending the warnings to the api, the warnings that were not sent yet are sent the next time that we start
+     */
+    public void shutdown() {
+        service.shutdown();
+    }
+}
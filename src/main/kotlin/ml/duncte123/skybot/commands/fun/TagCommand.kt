@@ -81,10 +81,12 @@ class TagCommand : Command() {
                     MessageUtils.sendMsg(event, "You do not own this tag.")
                     return
                 }
-                if (TagUtils.deleteTag(t)) {
-                    MessageUtils.sendMsg(event, "Tag `${args[1]}` has been deleted successfully")
-                } else {
-                    MessageUtils.sendMsg(event, "Failed to delete this tag")
+                TagUtils.deleteTagAsync(t).whenComplete { deleted, error ->
+                    if (error == null && deleted) {
+                        MessageUtils.sendMsg(event, "Tag `${args[1]}` has been deleted successfully")
+                    } else {
+                        MessageUtils.sendMsg(event, "Failed to delete this tag")
+                    }
                 }
 
             }
@@ -100,17 +102,19 @@ class TagCommand : Command() {
                 return
             }
             val newTagContent: List<String> = event.message.contentRaw.replaceFirst(Pattern.quote(PREFIX), "").split(" ")
-            if (TagUtils.registerNewTag(event.author, Tag(
-                            TagUtils.tagsList.keys.size + 1,
-                            String.format("%#s", event.author),
-                            event.author.id,
-                            args[1],
-                            StringUtils.join(Arrays.copyOfRange(newTagContent.toTypedArray(), 3, newTagContent.size), " ")))) {
-                MessageUtils.sendMsg(event, "Tag added successfully.")
-
-            } else {
-                MessageUtils.sendMsg(event, "Failed to add tag.")
-            }
+            TagUtils.registerNewTagAsync(event.author, Tag(
+                    TagUtils.tagsList.keys.size + 1,
+                    String.format("%#s", event.author),
+                    event.author.id,
+                    args[1],
+                    StringUtils.join(Arrays.copyOfRange(newTagContent.toTypedArray(), 3, newTagContent.size), " ")))
+                    .whenComplete { added, error ->
+                        if (error == null && added) {
+                            MessageUtils.sendMsg(event, "Tag added successfully.")
+                        } else {
+                            MessageUtils.sendMsg(event, "Failed to add tag.")
+                        }
+                    }
         }
     }
 
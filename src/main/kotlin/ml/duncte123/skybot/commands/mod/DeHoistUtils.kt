@@ -21,22 +21,79 @@
 package ml.duncte123.skybot.commands.mod
 
 import ml.duncte123.skybot.objects.command.Command
+import ml.duncte123.skybot.utils.AirUtils
 import ml.duncte123.skybot.utils.GuildSettingsUtils
 import ml.duncte123.skybot.utils.MessageUtils.sendMsg
 import ml.duncte123.skybot.utils.MessageUtils.sendSuccess
+import ml.duncte123.skybot.utils.ModerationQueue
 import net.dv8tion.jda.core.Permission
+import net.dv8tion.jda.core.entities.Guild
 import net.dv8tion.jda.core.entities.Member
+import net.dv8tion.jda.core.entities.Message
 import net.dv8tion.jda.core.events.guild.member.GuildMemberJoinEvent
 import net.dv8tion.jda.core.events.guild.member.GuildMemberNickChangeEvent
 import net.dv8tion.jda.core.events.message.guild.GuildMessageReceivedEvent
 import net.dv8tion.jda.core.hooks.ListenerAdapter
-import java.util.regex.Pattern
+import java.util.ArrayDeque
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+import java.util.stream.Collectors
+
+/**
+ * The char \uD82F\uDCA2 or \u1BCA2 is a null char that puts a member to the bottom
+ */
+private const val DEHOIST_PREFIX = "\uD82F\uDCA2"
+
+/**
+ * The characters that people put in front of their name to get to the top of the member list
+ */
+private val hoistChars = BooleanArray(128).apply {
+    "[]*_-=+!@#\$%^&()".forEach { this[it.toInt()] = true }
+}
+
+/**
+ * This checks if a name has one of the characters that are used to hoist, without making any objects
+ * @return [Boolean] true if the name has one of the characters
+ */
+fun isHoistedName(name: String): Boolean {
+    for (c in name) {
+        if (c.toInt() < 128 && hoistChars[c.toInt()]) {
+            return true
+        }
+    }
+
+    return false
+}
+
+/**
+ * This checks if we are able to de-hoist a member, it does not look at the settings of the guild
+ * @return [Boolean] true if the member has a hoisted name that we can change
+ */
+fun canDehoist(member: Member): Boolean {
+    val memberName = member.effectiveName
+    return !memberName.startsWith(DEHOIST_PREFIX) && isHoistedName(memberName) &&
+            member.guild.selfMember.hasPermission(Permission.NICKNAME_MANAGE) &&
+            member.guild.selfMember.canInteract(member)
+}
 
 class DeHoistCommand : Command() {
+
+    /**
+     * The sweeps that are running in the guilds
+     */
+    private val sweeps = ConcurrentHashMap<Long, DeHoistSweep>()
+
     override fun executeCommand(invoke: String, args: Array<out String>, event: GuildMessageReceivedEvent) {
+        if (args.size == 1 && args[0] == "all") {
+            sweep(event)
+            return
+        }
         if (event.message.mentionedMembers.size == 0) {
             sendMsg(event, """"Incorrect usage
-                |Correct usage: `$PREFIX$name <@user>`
+                |Correct usage: `$PREFIX$name <@user>` or `$PREFIX$name all`
             """.trimMargin())
             return
         }
@@ -51,47 +108,254 @@ class DeHoistCommand : Command() {
             return
         }
 
-        event.guild.controller.setNickname(toDehoist, "\uD82F\uDCA2" + toDehoist.effectiveName)
+        event.guild.controller.setNickname(toDehoist, DEHOIST_PREFIX + toDehoist.effectiveName)
                 .reason("de-hoist by ${String.format("%#s", event.author)}").queue()
         sendSuccess(event.message)
     }
 
-    override fun help() = """De-hoists a user
-        |Usage: `$PREFIX$name <@user>`
+    private fun sweep(event: GuildMessageReceivedEvent) {
+        val guild = event.guild
+
+        if (!event.member.hasPermission(Permission.NICKNAME_MANAGE, Permission.MANAGE_SERVER)) {
+            sendMsg(event, "You need the manage nicknames and manage server permissions to de-hoist everyone")
+            return
+        }
+        if (!guild.selfMember.hasPermission(Permission.NICKNAME_MANAGE)) {
+            sendMsg(event, "I do not have the permission to change nicknames")
+            return
+        }
+        if (sweeps[guild.idLong]?.isStalled() == false) {
+            sendMsg(event, "I am already de-hoisting the members of this server")
+            return
+        }
+
+        val reason = "de-hoist by ${String.format("%#s", event.author)}"
+        val sweep = DeHoistSweep(guild, reason)
+
+        if (sweep.total == 0) {
+            sendMsg(event, "There are no hoisted members that I can de-hoist")
+            return
+        }
+
+        var claimed = false
+        //A sweep that has not heard back from discord in a long time is replaced so the guild is never locked out
+        sweeps.compute(guild.idLong) { _, old ->
+            if (old == null || old.isStalled()) {
+                claimed = true
+                sweep
+            } else {
+                old
+            }
+        }
+
+        if (!claimed) {
+            sendMsg(event, "I am already de-hoisting the members of this server")
+            return
+        }
+
+        //The sweep does not wait for the message, when the message can't be sent we de-hoist without showing the progress
+        val progress = AtomicReference<Message>()
+
+        try {
+            sweep.start({ progress.get()?.let { edit(it, sweep) } }, {
+                sweeps.remove(guild.idLong, sweep)
+                progress.get()?.let { edit(it, sweep) }
+            })
+        } catch (e: Exception) {
+            sweeps.remove(guild.idLong, sweep)
+            throw e
+        }
+
+        sendMsg(event, "De-hoisting ${sweep.total} members, this can take a while") { message ->
+            progress.set(message)
+
+            //The sweep can be done before the message is sent
+            if (sweep.isDone()) {
+                edit(message, sweep)
+            }
+        }
+    }
+
+    private fun edit(message: Message, sweep: DeHoistSweep) {
+        val text = if (sweep.isDone()) "Done! " else "De-hoisting... "
+        message.editMessage(text + "${sweep.getDone()}/${sweep.total} members de-hoisted" +
+                (if (sweep.getSkipped() > 0) ", ${sweep.getSkipped()} members did not need it anymore" else "") +
+                (if (sweep.getFailed() > 0) ", it failed for ${sweep.getFailed()} members" else "")).queue(null) { }
+    }
+
+    override fun help() = """De-hoists a user or everyone in the server
+        |Usage: `$PREFIX$name <@user>` or `$PREFIX$name all`
     """.trimMargin()
 
     override fun getName() = "dehoist"
 }
 
-class DeHoistListener : ListenerAdapter() {
+/**
+ * This de-hoists all the members of a guild.
+ * The members are collected from the member cache once, after that the nicknames are changed through the [ModerationQueue]
+ * a few at a time so the other guilds and the more important actions can still go first.
+ */
+class DeHoistSweep(private val guild: Guild, private val reason: String) {
+
+    private val members = ArrayDeque<Member>(guild.memberCache.stream()
+            .filter { canDehoist(it) }
+            .collect(Collectors.toList()))
+    private val done = AtomicInteger()
+    private val failed = AtomicInteger()
+    private val skipped = AtomicInteger()
+    private val finished = AtomicBoolean()
+    private var running = 0
+    private var lastReport = 0L
+    @Volatile
+    private var lastActivity = System.currentTimeMillis()
+    private lateinit var onProgress: () -> Unit
+    private lateinit var onFinish: () -> Unit
+
+    /**
+     * The amount of members that we are going to de-hoist
+     */
+    val total = members.size
+
+    /**
+     * This starts changing the nicknames
+     * @param onProgress called every few seconds while we are busy
+     * @param onFinish called once when all the members are done
+     */
+    fun start(onProgress: () -> Unit, onFinish: () -> Unit) {
+        this.onProgress = onProgress
+        this.onFinish = onFinish
+        this.lastReport = System.currentTimeMillis()
+        this.lastActivity = lastReport
+        feed()
+    }
+
+    fun getDone() = done.get()
+
+    fun getFailed() = failed.get()
+
+    fun getSkipped() = skipped.get()
 
-    private val badNameChars = "[\\[\\]*_\\-=+!@#\$%^&()]"
-    private val regex = Pattern.compile(badNameChars)
+    fun isDone() = done.get() + failed.get() + skipped.get() >= total
+
+    /**
+     * @return true when none of the nicknames were done in a long time, discord or JDA probably lost the requests
+     */
+    fun isStalled() = !isDone() && System.currentTimeMillis() - lastActivity > STALL_TIMEOUT
+
+    @Synchronized
+    private fun feed() {
+        while (running < BATCH_SIZE) {
+            val member = members.poll() ?: return
+            running++
+            //The result of a nickname change is always null, so we have to remember if we made the request
+            var changed = false
+
+            AirUtils.MODERATION.submit<Void>(ModerationQueue.ActionType.NICKNAME, member, {
+                //The member may have changed the name or left while waiting
+                if (canDehoist(member)) {
+                    changed = true
+                    guild.controller.setNickname(member, DEHOIST_PREFIX + member.effectiveName).reason(reason)
+                } else {
+                    null
+                }
+            }, { finished(if (changed) done else skipped) }, { finished(failed) })
+        }
+    }
+
+    private fun finished(counter: AtomicInteger) {
+        counter.incrementAndGet()
+
+        lastActivity = System.currentTimeMillis()
+        var report = false
+
+        synchronized(this) {
+            running--
+
+            val now = System.currentTimeMillis()
+            if (now - lastReport > REPORT_INTERVAL) {
+                lastReport = now
+                report = true
+            }
+        }
+
+        if (isDone()) {
+            if (finished.compareAndSet(false, true)) {
+                onFinish()
+            }
+            return
+        }
+
+        if (report) {
+            onProgress()
+        }
+
+        feed()
+    }
+
+    companion object {
+        /**
+         * The max amount of nicknames that one sweep has waiting in the queue
+         */
+        private const val BATCH_SIZE = 10
+        /**
+         * How often we show the progress
+         */
+        private val REPORT_INTERVAL = TimeUnit.SECONDS.toMillis(10)
+        /**
+         * How long a sweep may go without any nickname being done before a new sweep may take its place
+         */
+        private val STALL_TIMEOUT = TimeUnit.MINUTES.toMillis(5)
+    }
+}
+
+class DeHoistListener : ListenerAdapter() {
 
     override fun onGuildMemberJoin(event: GuildMemberJoinEvent) {
         if (shouldChangeName(event.member)) {
-            //the char \uD82F\uDCA2 or \u1BCA2 is a null char that puts a member to the bottom
-            event.guild.controller.setNickname(event.member, "\uD82F\uDCA2" + event.member.effectiveName)
-                    .reason("auto de-hoist").queue()
+            dehoistIfEnabled(event.member)
         }
     }
 
     override fun onGuildMemberNickChange(event: GuildMemberNickChangeEvent) {
         if (shouldChangeName(event.member)) {
-            //the char \uD82F\uDCA2 or \u1BCA2 is a null char that puts a member to the bottom
-            event.guild.controller.setNickname(event.member, "\uD82F\uDCA2" + event.member.effectiveName)
-                    .reason("auto de-hoist").queue()
+            dehoistIfEnabled(event.member)
         }
     }
 
     /**
-     * This checks if we should change the nickname of a member to de-hoist it
+     * The settings are only loaded when the name is hoisted, they are loaded on a database thread so the event thread
+     * does not have to wait for them
+     */
+    private fun dehoistIfEnabled(member: Member) {
+        GuildSettingsUtils.getGuildAsync(member.guild).thenAccept {
+            if (it.isAutoDeHoist) {
+                dehoist(member)
+            }
+        }
+    }
+
+    /**
+     * The nickname is changed through the [ModerationQueue] so a lot of joins at once can't hold up the kicks and mutes
+     */
+    private fun dehoist(member: Member) {
+        AirUtils.MODERATION.submit<Void>(ModerationQueue.ActionType.NICKNAME, member) {
+            //The name is read when it is our turn so we always use the newest one, the settings were loaded before we got here
+            if (shouldChangeName(member) && GuildSettingsUtils.isLoaded(member.guild) &&
+                    GuildSettingsUtils.getGuild(member.guild).isAutoDeHoist) {
+                member.guild.controller.setNickname(member, DEHOIST_PREFIX + member.effectiveName).reason("auto de-hoist")
+            } else {
+                null
+            }
+        }
+    }
+
+    /**
+     * This checks if we should change the nickname of a member to de-hoist it, it does not look at the settings of the guild
      * @return [Boolean] true if we should change the nickname
      */
-    private fun shouldChangeName(member: Member): Boolean {
+    fun shouldChangeName(member: Member): Boolean {
         val memberName = member.effectiveName
-        return (!memberName.startsWith("\uD82F\uDCA2") && regex.matcher(memberName).find() &&
-                member.guild.selfMember.hasPermission(Permission.NICKNAME_MANAGE) &&
-                GuildSettingsUtils.getGuild(member.guild).isAutoDeHoist)
+        return (!memberName.startsWith(DEHOIST_PREFIX) && isHoistedName(memberName) &&
+                member.guild.selfMember.hasPermission(Permission.NICKNAME_MANAGE))
     }
-}
\ No newline at end of file
+}
@@ -63,7 +63,7 @@ class WarnCommand : Command() {
             |Reason: ${if (reason.isEmpty()) "No reason given" else "`$reason`"}
         """.trimMargin()
 
-        ModerationUtils.addWarningToDb(event.author, target.user, reason, event.guild, event.jda)
+        ModerationUtils.addWarningToDb(event.author, target.user, reason, event.guild)
         ModerationUtils.modLog(event.author, target.user, "warned", reason, event.guild)
         target.user.openPrivateChannel().queue {
             //Ignore the fail consumer, we don't want to have spam in the console
@@ -0,0 +1,191 @@
+package ml.duncte123.skybot.utils
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * This counts in how many channels of a guild the same text is posted, so we can catch raids that post
+ * one message everywhere at once. Members that repeat each other in one channel only count once.
+ * The text itself is never stored, only a 64 bit hash of it and the channels that it was posted in.
+ * Every guild that is active has two halves that are swapped every half window, so old messages fall out after
+ * one to one and a half window.
+ * When a guild posts more different texts than we keep, the new ones are not counted, so the count can be too low
+ * but never too high.
+ */
+class DuplicateDetector(private val windowMillis: Long = TimeUnit.SECONDS.toMillis(15)) {
+
+    private val guilds = ConcurrentHashMap<Long, Window>()
+    private val recorded = AtomicInteger()
+
+    /**
+     * This records the content of a message
+     * @return in how many different channels the same content was posted in the guild in the window, this message included.
+     * Messages that are too short to say anything return {@code 0}
+     */
+    fun record(guildId: Long, channelId: Long, content: String, now: Long = System.currentTimeMillis()): Int {
+        val hash = hash(content)
+
+        if (hash == 0L) {
+            return 0
+        }
+
+        val window = guilds.computeIfAbsent(guildId) { Window(now) }
+        val count = window.add(hash, channelId, now, windowMillis / 2)
+
+        if (recorded.incrementAndGet() % EVICT_INTERVAL == 0) {
+            evictIdle(now)
+        }
+
+        return count
+    }
+
+    /**
+     * This forgets everything about a guild
+     */
+    fun remove(guildId: Long) {
+        guilds.remove(guildId)
+    }
+
+    /**
+     * This removes the guilds that have not sent anything in the window
+     */
+    fun evictIdle(now: Long = System.currentTimeMillis()) {
+        guilds.values.removeIf { now - it.last > windowMillis }
+    }
+
+    /**
+     * @return the amount of guilds that we keep the texts for
+     */
+    fun size(): Int = guilds.size
+
+    private class Window(private var rotatedAt: Long) {
+        private var current = HashMap<Long, Channels>()
+        private var previous = HashMap<Long, Channels>()
+        @Volatile
+        var last = rotatedAt
+
+        @Synchronized
+        fun add(hash: Long, channelId: Long, now: Long, halfWindow: Long): Int {
+            rotate(now, halfWindow)
+            last = now
+
+            var channels = current[hash]
+
+            if (channels == null && current.size < MAX_TEXTS) {
+                channels = Channels()
+                current[hash] = channels
+            }
+
+            channels?.add(channelId)
+
+            return distinct(channels, previous[hash], channelId)
+        }
+
+        /**
+         * @return the amount of different channels in both halves and the channel of the new message
+         */
+        private fun distinct(current: Channels?, previous: Channels?, channelId: Long): Int {
+            var count = current?.size ?: 0
+
+            if (current == null || !current.contains(channelId)) {
+                count++
+            }
+
+            if (previous != null) {
+                for (i in 0 until previous.size) {
+                    val id = previous.ids[i]
+
+                    if (id != channelId && (current == null || !current.contains(id))) {
+                        count++
+                    }
+                }
+            }
+
+            return count
+        }
+
+        private fun rotate(now: Long, halfWindow: Long) {
+            val elapsed = now - rotatedAt
+
+            if (elapsed < halfWindow) {
+                return
+            }
+
+            if (elapsed >= halfWindow * 2) {
+                //Nothing was sent for a whole window, both halves are too old
+                previous = HashMap()
+            } else {
+                previous = current
+            }
+
+            current = HashMap()
+            rotatedAt = now
+        }
+    }
+
+    /**
+     * The channels that a text was posted in, we only need to count up to the spam threshold so we keep a few
+     */
+    private class Channels {
+        val ids = LongArray(MAX_CHANNELS)
+        var size = 0
+
+        fun contains(channelId: Long): Boolean {
+            for (i in 0 until size) {
+                if (ids[i] == channelId) {
+                    return true
+                }
+            }
+
+            return false
+        }
+
+        fun add(channelId: Long) {
+            if (size < ids.size && !contains(channelId)) {
+                ids[size++] = channelId
+            }
+        }
+    }
+
+    companion object {
+        /**
+         * The max amount of different texts that we keep for a guild in every half of the window
+         */
+        private const val MAX_TEXTS = 2048
+        /**
+         * The max amount of channels that we keep for one text
+         */
+        private const val MAX_CHANNELS = 8
+        /**
+         * Messages that have less letters and digits than this are things like "lol" and "gg" that are posted all the time
+         */
+        private const val MIN_LENGTH = 8
+        /**
+         * How many messages we record before we look for idle guilds
+         */
+        private const val EVICT_INTERVAL = 512
+
+        /**
+         * This hashes the letters and digits of the text in lower case, so small changes in spaces,
+         * punctuation or caps still give the same hash
+         * @return the hash or {@code 0} when the text is too short
+         */
+        @JvmStatic
+        fun hash(content: String): Long {
+            var hash = -0x340d631b7bdddcdbL
+            var length = 0
+
+            for (c in content) {
+                if (!Character.isLetterOrDigit(c)) {
+                    continue
+                }
+
+                hash = (hash xor Character.toLowerCase(c).toLong()) * 0x100000001b3L
+                length++
+            }
+
+            return if (length < MIN_LENGTH || hash == 0L) 0L else hash
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package ml.duncte123.skybot.utils
+
+import net.dv8tion.jda.core.entities.Member
+import net.dv8tion.jda.core.entities.TextChannel
+
+/**
+ * The things that the [SpamFilter] does to a member that spams, these go to the database, the api and discord
+ */
+interface SpamActions {
+
+    /**
+     * @return the amount of warnings that the member has
+     */
+    fun getWarnings(member: Member): Int
+
+    /**
+     * This gives the member a warning for spam
+     */
+    fun warn(member: Member)
+
+    /**
+     * This kicks or mutes the member
+     * @param minutes how long the member is muted for
+     */
+    fun punish(member: Member, channel: TextChannel, kick: Boolean, minutes: Long)
+
+    /**
+     * This removes the last messages of the member in the channel
+     */
+    fun clearMessages(channel: TextChannel, userId: Long)
+
+    companion object {
+        /**
+         * The actions that the bot uses, they go through the [WarningLedger] and the [ModerationQueue]
+         */
+        @JvmField
+        val DEFAULT: SpamActions = object : SpamActions {
+            override fun getWarnings(member: Member) = ModerationUtils.getWarningCountForUser(member.user, member.guild)
+
+            override fun warn(member: Member) {
+                ModerationUtils.addWarningToDb(member.jda.selfUser, member.user, "Spam", member.guild)
+            }
+
+            override fun punish(member: Member, channel: TextChannel, kick: Boolean, minutes: Long) {
+                if (kick) {
+                    ModerationUtils.kickUser(member.guild, member, channel, "Spam")
+                } else {
+                    ModerationUtils.muteUser(member.jda, member.guild, member, channel, "Spam", minutes)
+                }
+            }
+
+            override fun clearMessages(channel: TextChannel, userId: Long) {
+                //The listener has already seen these messages so we don't have to get the history
+                val clearable = AirUtils.RECENT_MESSAGES.getLatestFrom(channel.idLong, userId, 9)
+                AirUtils.MODERATION.delete(channel, *clearable)
+            }
+        }
+    }
+}
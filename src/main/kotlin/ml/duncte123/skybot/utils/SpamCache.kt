@@ -1,31 +1,119 @@
 package ml.duncte123.skybot.utils
 
-class SpamCache : HashMap<Long, List<Long>>() {
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 
-    @Throws(IllegalArgumentException::class)
-    public fun update(longs: LongArray, updateMode: Int = 0): SpamCache {
-        when {
-            updateMode == -1 && longs.size == 1 -> {
-                this - longs[0]
+/**
+ * This keeps the times of the last messages of the members that are sending messages, per guild.
+ * Every member gets a small ring buffer of timestamps so we can count the messages in a sliding window.
+ * Members that did not send anything for a whole window are removed every now and then while we record messages,
+ * so only the members that are active take up memory.
+ */
+class SpamCache(private val windowMillis: Long = TimeUnit.SECONDS.toMillis(10), private val capacity: Int = 16) {
+
+    private val guilds = ConcurrentHashMap<Long, ConcurrentHashMap<Long, MessageWindow>>()
+    private val recorded = AtomicInteger()
+
+    /**
+     * This records a message of a member
+     * @return the amount of messages that the member has sent in the window, this message included
+     */
+    fun record(guildId: Long, userId: Long, now: Long = System.currentTimeMillis()): Int {
+        val members = guilds.computeIfAbsent(guildId) { ConcurrentHashMap() }
+        val window = members.computeIfAbsent(userId) { MessageWindow(capacity) }
+        val count = window.add(now, windowMillis)
+
+        if (recorded.incrementAndGet() % EVICT_INTERVAL == 0) {
+            evictIdle(now)
+        }
+
+        return count
+    }
+
+    /**
+     * @return the amount of messages that the member has sent in the window
+     */
+    fun count(guildId: Long, userId: Long, now: Long = System.currentTimeMillis()): Int {
+        return guilds[guildId]?.get(userId)?.count(now, windowMillis) ?: 0
+    }
+
+    /**
+     * This forgets the messages of a member
+     */
+    fun remove(guildId: Long, userId: Long) {
+        guilds[guildId]?.remove(userId)
+    }
+
+    /**
+     * This removes the members that have not sent anything in the window and the guilds that have no members left
+     */
+    fun evictIdle(now: Long = System.currentTimeMillis()) {
+        for ((guildId, members) in guilds) {
+            members.values.removeIf { it.isIdle(now, windowMillis) }
+
+            if (members.isEmpty()) {
+                guilds.remove(guildId, members)
             }
-            longs.size == 2 -> {
-                val msgIds: List<Long> =
-                        if (!this.containsKey(longs[0]))
-                            ArrayList()
-                        else
-                            this[longs[0]] as ArrayList
-
-                if (updateMode == 0) {
-                    this[longs[0]] = msgIds.plus(longs[1])
-                } else if (updateMode == 1) {
-                    this[longs[0]] = msgIds.minus(longs[1])
-                }
+        }
+    }
+
+    /**
+     * @return the amount of members that we keep messages for
+     */
+    fun size(): Int = guilds.values.sumBy { it.size }
+
+    private class MessageWindow(capacity: Int) {
+        private val times = LongArray(capacity)
+        private var head = 0
+        private var size = 0
+        @Volatile
+        private var last = 0L
+
+        @Synchronized
+        fun add(now: Long, windowMillis: Long): Int {
+            times[head] = now
+            head = (head + 1) % times.size
+
+            if (size < times.size) {
+                size++
             }
-            else -> {
-                throw IllegalArgumentException("Arguments don't match.")
+
+            last = now
+
+            return countSince(now - windowMillis)
+        }
+
+        @Synchronized
+        fun count(now: Long, windowMillis: Long): Int = countSince(now - windowMillis)
+
+        fun isIdle(now: Long, windowMillis: Long) = now - last > windowMillis
+
+        /**
+         * The times are in order so we walk back from the newest one until we find one that is too old
+         */
+        private fun countSince(start: Long): Int {
+            var count = 0
+            var i = head
+
+            while (count < size) {
+                i = if (i == 0) times.size - 1 else i - 1
+
+                if (times[i] <= start) {
+                    break
+                }
+
+                count++
             }
+
+            return count
         }
-        return this
     }
 
-}
\ No newline at end of file
+    companion object {
+        /**
+         * How many messages we record before we look for idle members
+         */
+        private const val EVICT_INTERVAL = 512
+    }
+}
@@ -3,28 +3,21 @@ package ml.duncte123.skybot.utils
 import net.dv8tion.jda.core.entities.Member
 import net.dv8tion.jda.core.entities.Message
 import org.slf4j.LoggerFactory
-import java.util.stream.Collectors
 
-class SpamFilter : HashMap<Long, SpamCache>() {
+/**
+ * @param actions what we do to the members that spam
+ * @param cache   this holds the spam messages of the members in the last 10 seconds
+ */
+class SpamFilter @JvmOverloads constructor(
+        private val actions: SpamActions = SpamActions.DEFAULT,
+        private val cache: SpamCache = SpamCache()) {
 
     private lateinit var rates: LongArray
 
-    @Throws(IllegalArgumentException::class)
-    public fun update(longs: LongArray, updateMode: Int = 0) {
-        if (this.containsKey(longs[0]))
-            this[longs[0]]!!.update(longs.copyOfRange(1, 3), updateMode)
-        else {
-            this[longs[0]] = (SpamCache().update(longs.copyOfRange(1, 3), updateMode))
-        }
-    }
-
-    public fun clearMessages() {
-        for (guildsSpamCache in this.values) {
-            for (memberId in guildsSpamCache.keys) {
-                guildsSpamCache[memberId] = ArrayList()
-            }
-        }
-    }
+    /**
+     * This counts in how many channels of a guild the same content is posted
+     */
+    private val duplicates = DuplicateDetector()
 
     @Suppress("UNCHECKED_CAST")
     operator fun plus(any: Any?): Any {
@@ -64,16 +57,45 @@ class SpamFilter : HashMap<Long, SpamCache>() {
         val guild = author.guild
         val user = author.user
         val msg = data.second
-        val jda = msg.jda
+        //Raids post the same text in a lot of channels, the same text in a few channels at once counts as spam
+        val duplicate = duplicates.record(guild.idLong, msg.textChannel.idLong, msg.contentRaw) >= DUPLICATE_THRESHOLD
+        val returnValue = duplicate || isSpam(msg)
+
+        //Messages that only have embeds are reported but not punished
+        if (msg.contentDisplay.isBlank() && msg.embeds.isNotEmpty()) {
+            return returnValue
+        }
+
+        if (returnValue) {
+            //The member has already been punished for these messages
+            if (cache.record(guild.idLong, user.idLong) > 8) {
+                return true
+            }
+
+            val warnings = actions.getWarnings(author) + 1
+            val ratelimit = rates[warnings.coerceIn(0, 5)]
+            actions.warn(author)
+            actions.punish(author, msg.textChannel, data.third, ratelimit)
+            actions.clearMessages(msg.textChannel, user.idLong)
+        }
+
+        return returnValue
+    }
+
+    /**
+     * This only looks at the content of the message, it does not touch the cache, the database or discord
+     * @return {@code true} when the content of the message looks like spam.
+     */
+    public fun isSpam(msg: Message): Boolean {
         val displayContent = msg.contentDisplay
 
-        val returnValue: Boolean = when {
+        return when {
             displayContent.isBlank() -> {
                 if (msg.embeds.isEmpty()) {
                     true
                 }
                 else {
-                    return msg.embeds.map {
+                    msg.embeds.map {
                         it.description.isBlank()
                         && it.footer.text.isBlank()
                         && it.title.isBlank()
@@ -90,34 +112,6 @@ class SpamFilter : HashMap<Long, SpamCache>() {
                 false
             }
         }
-
-        if (returnValue) {
-            this.update(longArrayOf(guild.idLong, user.idLong, msg.idLong), 0)
-            val cache = this[guild.idLong]
-
-            if (cache != null) {
-                val msgs = cache[user.idLong]
-                if (msgs != null) {
-                    if (msgs.size > 8)
-                        return true
-                }
-            }
-
-            val warnings = ModerationUtils.getWarningCountForUser(user, author.guild) + 1
-            val ratelimit = rates[warnings.coerceIn(0, 5)]
-            ModerationUtils.addWarningToDb(jda.selfUser, user, "Spam", guild, jda)
-            if (data.third) {
-                ModerationUtils.kickUser(guild, author, msg.textChannel, "Spam")
-            } else {
-                ModerationUtils.muteUser(jda, guild, author, msg.textChannel, "Spam", ratelimit)
-            }
-            val clearable = msg.textChannel.iterableHistory.stream().filter { it.author == author.user }.limit(9).collect(Collectors.toList())
-            msg.textChannel.deleteMessages(clearable).queue{
-                this[guild.idLong]?.get(author.user.idLong)?.filter { !clearable.map { it.idLong }.contains(it) }
-            }
-        }
-
-        return returnValue
     }
 
     public fun applyRates(newRates: LongArray): SpamFilter {
@@ -130,4 +124,11 @@ class SpamFilter : HashMap<Long, SpamCache>() {
         return this
     }
 
+    companion object {
+        /**
+         * The amount of different channels that the same text has to be posted in within the window to be seen as spam
+         */
+        private const val DUPLICATE_THRESHOLD = 5
+    }
+
 }
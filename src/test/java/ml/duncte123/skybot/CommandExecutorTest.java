@@ -0,0 +1,85 @@
+/*
+ * Skybot, a multipurpose discord bot
+ *      Copyright (C) 2017 - 2018  Duncan "duncte123" Sterken & Ramid "ramidzkh" Khan & Maurice R S "Sanduhr32"
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ml.duncte123.skybot;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CommandExecutorTest {
+
+    @Test
+    public void testGuildOrder() throws InterruptedException {
+        CommandExecutor executor = new CommandExecutor(4, 1000, 100);
+        List<Integer> first = new CopyOnWriteArrayList<>();
+        List<Integer> second = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(100);
+
+        for (int i = 0; i < 50; i++) {
+            final int n = i;
+            assertTrue(executor.submit(1L, () -> {
+                first.add(n);
+                latch.countDown();
+            }));
+            assertTrue(executor.submit(2L, () -> {
+                second.add(n);
+                latch.countDown();
+            }));
+        }
+
+        assertTrue("Not all the tasks have run", latch.await(10, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 50; i++) {
+            assertEquals("Tasks in a guild ran out of order", i, (int) first.get(i));
+            assertEquals("Tasks in a guild ran out of order", i, (int) second.get(i));
+        }
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void testGuildQueueLimit() throws InterruptedException {
+        CommandExecutor executor = new CommandExecutor(1, 1000, 2);
+        CountDownLatch block = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        assertTrue(executor.submit(1L, () -> {
+            started.countDown();
+            try {
+                block.await();
+            } catch (InterruptedException ignored) {
+            }
+        }));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        assertTrue(executor.submit(1L, () -> {}));
+        assertTrue(executor.submit(1L, () -> {}));
+        assertFalse("The lane should be full", executor.submit(1L, () -> {}));
+        assertEquals(1, executor.getRejectedCount());
+        assertEquals(2, executor.getQueueDepth());
+
+        block.countDown();
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Skybot, a multipurpose discord bot
+ *      Copyright (C) 2017 - 2018  Duncan "duncte123" Sterken & Ramid "ramidzkh" Khan & Maurice R S "Sanduhr32"
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ml.duncte123.skybot.command;
+
+import ml.duncte123.skybot.Settings;
+import ml.duncte123.skybot.objects.command.ParsedInvocation;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ParsedInvocationTest {
+
+    @Test
+    public void testDefaultPrefix() {
+        ParsedInvocation invocation = ParsedInvocation.parse(Settings.PREFIX.toUpperCase() + "HeLp  music\tplay ", "!", null);
+
+        assertNotNull("Message with the default prefix was not parsed", invocation);
+        assertEquals(ParsedInvocation.PrefixType.DEFAULT, invocation.getPrefixType());
+        assertEquals("help", invocation.getInvoke());
+        assertArrayEquals(new String[]{"music", "play"}, invocation.getArgs());
+        assertEquals("music\tplay ", invocation.getRawArgs());
+    }
+
+    @Test
+    public void testCustomPrefix() {
+        ParsedInvocation invocation = ParsedInvocation.parse("!!ping", "!!", null);
+
+        assertNotNull("Message with the custom prefix was not parsed", invocation);
+        assertEquals(ParsedInvocation.PrefixType.CUSTOM, invocation.getPrefixType());
+        assertEquals("ping", invocation.getInvoke());
+        assertEquals(0, invocation.getArgs().length);
+    }
+
+    @Test
+    public void testMention() {
+        ParsedInvocation invocation = ParsedInvocation.parse("<@210363111729790977> how are you", "!", "<@210363111729790977>");
+
+        assertNotNull("Message with a mention was not parsed", invocation);
+        assertEquals(ParsedInvocation.PrefixType.MENTION, invocation.getPrefixType());
+        assertEquals("", invocation.getInvoke());
+        assertArrayEquals(new String[]{"how", "are", "you"}, invocation.getArgs());
+    }
+
+    @Test
+    public void testNoPrefix() {
+        assertNull("Message without a prefix should not be parsed", ParsedInvocation.parse("hello there", "!", null));
+        assertNull("Empty message should not be parsed", ParsedInvocation.parse("", "!", null));
+    }
+}
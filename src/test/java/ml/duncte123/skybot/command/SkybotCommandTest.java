@@ -56,6 +56,19 @@ public class SkybotCommandTest {
         assertNull(String.format("Command getter should return null for this name (%s)", key), manager.getCommand(key));
     }
 
+    @Test
+    public void testCommandGetterForCategory() {
+        DummyCommand cmd = new DummyCommand();
+        manager.addCommand(cmd);
+
+        assertTrue("The dummy command is not listed in its category",
+                manager.getCommands(cmd.getCategory()).contains(cmd));
+        assertEquals("Command getter should ignore the case of the name", cmd, manager.getCommand("DuMmY"));
+        assertTrue("Could not remove the dummy command", manager.removeCommand("dummy"));
+        assertFalse("The dummy command is still listed in its category",
+                manager.getCommands(cmd.getCategory()).contains(cmd));
+    }
+
     @Test
     public void testCommandRegistering() {
         manager.addCommand(new DummyCommand());
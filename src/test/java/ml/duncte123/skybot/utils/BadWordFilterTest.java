@@ -0,0 +1,78 @@
+/*
+ * Skybot, a multipurpose discord bot
+ *      Copyright (C) 2017 - 2018  Duncan "duncte123" Sterken & Ramid "ramidzkh" Khan & Maurice R S "Sanduhr32"
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ml.duncte123.skybot.utils;
+
+import ml.duncte123.skybot.objects.guild.GuildSettings;
+import org.junit.Test;
+
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class BadWordFilterTest {
+
+    private final BadWordFilter filter = new BadWordFilter(new StringReader(
+            "ass,bass_class_pass\n" +
+            "shit,\n" +
+            "damn,\n" +
+            "crap,,scrap\n"));
+
+    @Test
+    public void testWords() {
+        assertFalse(filter.filterText("Hey everyone, does anyone want to play some music?"));
+        assertTrue(filter.filterText("This bot is a piece of shit"));
+        assertTrue("Words at the end of the message are not found", filter.filterText("damn"));
+        assertTrue("Upper case words are not found", filter.filterText("DAMN IT"));
+        assertFalse(filter.filterText(null));
+    }
+
+    @Test
+    public void testWordCount() {
+        assertEquals("The ignore words are counted as words", 4, filter.getWordCount());
+    }
+
+    @Test
+    public void testLeetspeak() {
+        assertTrue(filter.filterText("5h!7"));
+        assertTrue(filter.filterText("d@mn"));
+        assertTrue("Characters in between the letters are not skipped", filter.filterText("s.h.i.t"));
+    }
+
+    @Test
+    public void testIgnoreWords() {
+        assertFalse(filter.filterText("The bass player went to class"));
+        assertTrue("Ignore words only count around the bad word", filter.filterText("The bass player is an ass"));
+        assertFalse("Words with an empty ignore word should never be found", filter.filterText("crap"));
+    }
+
+    @Test
+    public void testGuildWords() {
+        GuildSettings settings = new GuildSettings("1")
+                .setSwearDenyWords(new String[]{"heck"})
+                .setSwearAllowWords(new String[]{"shitake"});
+
+        assertTrue("Words that the guild blocks are not found", filter.filterText("what the h3ck", settings));
+        assertFalse("Words that the guild blocks are found in other guilds", filter.filterText("what the heck"));
+        assertFalse("Words that the guild allows are found", filter.filterText("I like shitake mushrooms", settings));
+        assertTrue(filter.filterText("shitake but also shit", settings));
+
+        settings.setSwearDenyWords(new String[0]);
+        assertFalse("The words of the guild did not get compiled again", filter.filterText("what the heck", settings));
+    }
+}
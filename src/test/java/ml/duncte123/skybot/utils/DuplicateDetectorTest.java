@@ -0,0 +1,76 @@
+/*
+ * Skybot, a multipurpose discord bot
+ *      Copyright (C) 2017 - 2018  Duncan "duncte123" Sterken & Ramid "ramidzkh" Khan & Maurice R S "Sanduhr32"
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ml.duncte123.skybot.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DuplicateDetectorTest {
+
+    private static final String RAID = "Join this server for free nitro";
+
+    private final DuplicateDetector detector = new DuplicateDetector(15_000L);
+
+    @Test
+    public void testChannels() {
+        for (long channel = 1; channel <= 5; channel++) {
+            assertEquals(channel, detector.record(1L, channel, RAID, 1000L));
+        }
+
+        assertEquals("Other guilds are counted on their own", 1, detector.record(2L, 1L, RAID, 1000L));
+    }
+
+    @Test
+    public void testSameChannel() {
+        for (int i = 0; i < 50; i++) {
+            assertEquals("Repeating a text in one channel is counted more than once",
+                    1, detector.record(1L, 1L, RAID, 1000L + i));
+        }
+
+        assertEquals(2, detector.record(1L, 2L, RAID, 2000L));
+        assertEquals(2, detector.record(1L, 1L, RAID, 2000L));
+    }
+
+    @Test
+    public void testManyTexts() {
+        for (int i = 0; i < 100_000; i++) {
+            assertEquals("A text that was only posted once is counted more than once",
+                    1, detector.record(1L, i % 10, "This is message number " + i, 1000L));
+        }
+
+        for (long channel = 1; channel <= 3; channel++) {
+            assertTrue("A text is counted in more channels than it was posted in",
+                    detector.record(1L, channel, RAID, 1000L) <= channel);
+        }
+    }
+
+    @Test
+    public void testWindow() {
+        detector.record(1L, 1L, RAID, 1000L);
+        detector.record(1L, 2L, RAID, 1000L);
+        assertEquals("Texts from the last half window are forgotten", 3, detector.record(1L, 3L, RAID, 10_000L));
+        assertEquals("Old texts are not forgotten", 1, detector.record(1L, 4L, RAID, 40_000L));
+    }
+
+    @Test
+    public void testShortText() {
+        assertEquals(0, detector.record(1L, 1L, "lol", 1000L));
+        assertEquals(0, detector.record(1L, 1L, "!!! gg !!!", 1000L));
+    }
+}